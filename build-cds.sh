@@ -0,0 +1,54 @@
+#!/usr/bin/env sh
+# Builds out/B3_Rezouali_Imane.jar from the current sources, together with a class-data-sharing
+# archive trained on the headless and GUI entry points (--train), then measures
+# time-to-first-diagnostic of a batch run with and without the archive. Everything is written
+# under out/ (ignored by git); the committed B3_Rezouali_Imane.jar is left untouched.
+#
+#   ./build-cds.sh                  build, train and measure
+#   TARGET_MS=200 ./build-cds.sh    fail if the archived start-up is slower than 200 ms
+#
+# Run the result with:
+#   java -XX:SharedArchiveFile=out/B3_Rezouali_Imane.jsa -jar out/B3_Rezouali_Imane.jar [args]
+set -e
+cd "$(dirname "$0")"
+
+JAR=out/B3_Rezouali_Imane.jar
+ARCHIVE=out/B3_Rezouali_Imane.jsa
+TARGET_MS=${TARGET_MS:-300}
+RUNS=5
+
+rm -rf out
+mkdir -p out/classes
+javac -d out/classes src/*.java
+jar cfm "$JAR" manifest.txt -C out/classes .
+
+# training run: records every class loaded by both entry points (the GUI part is skipped on a headless JVM)
+java -XX:ArchiveClassesAtExit="$ARCHIVE" -jar "$JAR" --train > /dev/null
+
+SAMPLE=$(mktemp)
+printf 'let x = 1;\ndo {\n  x = x + 1;\n} while (x < 10);\n' > "$SAMPLE"
+
+# best of $RUNS wall-clock runs, in milliseconds
+measure() {
+    best=
+    i=0
+    while [ $i -lt $RUNS ]; do
+        start=$(date +%s%N)
+        java "$@" -jar "$JAR" "$SAMPLE" > /dev/null 2>&1 || true
+        end=$(date +%s%N)
+        ms=$(( (end - start) / 1000000 ))
+        if [ -z "$best" ] || [ "$ms" -lt "$best" ]; then best=$ms; fi
+        i=$((i + 1))
+    done
+    echo "$best"
+}
+
+without=$(measure)
+with=$(measure -XX:SharedArchiveFile="$ARCHIVE")
+rm -f "$SAMPLE"
+
+echo "time to first diagnostic: ${without} ms without archive, ${with} ms with $ARCHIVE (target ${TARGET_MS} ms)"
+if [ "$with" -gt "$TARGET_MS" ]; then
+    echo "start-up target missed" >&2
+    exit 1
+fi
@@ -0,0 +1,141 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+// Headless mode: validates the files given on the command line and prints their diagnostics.
+// usage: java -jar B3_Rezouali_Imane.jar [--cache-dir <dir>] [--cache-size <n>] [--metrics <file|->] <file>...
+//        java -jar B3_Rezouali_Imane.jar --project <dir> [<file>...]
+public class BatchCompiler {
+
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        Path cacheDir = null;
+        int cacheSize = 256;
+        String metricsOut = null;
+        Path projectDir = null;
+        List<Path> files = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--cache-dir".equals(arg) && i + 1 < args.length) {
+                cacheDir = Paths.get(args[++i]);
+            } else if ("--cache-size".equals(arg) && i + 1 < args.length) {
+                try {
+                    cacheSize = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    err.println("Invalid cache size: " + args[i]);
+                    return 2;
+                }
+            } else if ("--metrics".equals(arg) && i + 1 < args.length) {
+                metricsOut = args[++i];
+            } else if ("--project".equals(arg) && i + 1 < args.length) {
+                projectDir = Paths.get(args[++i]);
+            } else if (arg.startsWith("--")) {
+                err.println("Unknown option: " + arg);
+                return 2;
+            } else {
+                files.add(Paths.get(arg));
+            }
+        }
+        if (projectDir != null) {
+            return runProject(projectDir, files, out, err);
+        }
+        if (files.isEmpty()) {
+            err.println("usage: java -jar B3_Rezouali_Imane.jar [--cache-dir <dir>] [--cache-size <n>] [--metrics <file|->] <file>...");
+            return 2;
+        }
+
+        CompilationCache cache = new CompilationCache(cacheSize, cacheDir);
+        CompilerMetrics metrics = metricsOut != null ? new CompilerMetrics() : null;
+        boolean allOk = true;
+        for (Path file : files) {
+            String code;
+            try {
+                code = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                err.println(file + ": cannot read file (" + e.getMessage() + ")");
+                allOk = false;
+                continue;
+            }
+            CompilationResult result = cache.compile(code, metrics);
+            if (!result.isSuccessful()) allOk = false;
+            out.print(describe(file.toString(), result));
+        }
+        err.println("Cache: " + cache);
+        err.println("Interner: " + LexemeInterner.SHARED);
+        if (metrics != null) {
+            String json = metrics.toJson();
+            if ("-".equals(metricsOut)) {
+                out.println(json);
+            } else {
+                try {
+                    Files.write(Paths.get(metricsOut), (json + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    err.println("Cannot write metrics to " + metricsOut + " (" + e.getMessage() + ")");
+                }
+            }
+        }
+        return allOk ? 0 : 1;
+    }
+
+    // validates every .js file under dir (plus any extra files) as one project, resolving
+    // identifiers across files
+    private static int runProject(Path dir, List<Path> extraFiles, PrintStream out, PrintStream err) {
+        // a file named on the command line may also be under the project directory, possibly
+        // spelled differently (./a.js, dir/../dir/a.js); it must be loaded only once, or its
+        // declarations are installed twice
+        Set<Path> files = new LinkedHashSet<>();
+        try (Stream<Path> walk = Files.walk(dir)) {
+            walk.filter(p -> Files.isRegularFile(p) && p.toString().endsWith(".js")).sorted()
+                    .forEach(p -> files.add(p.toAbsolutePath().normalize()));
+        } catch (IOException e) {
+            err.println(dir + ": cannot read project (" + e.getMessage() + ")");
+            return 1;
+        }
+        for (Path file : extraFiles) files.add(file.toAbsolutePath().normalize());
+
+        boolean allOk = true;
+        int crossFileReferences = 0;
+        int warnings = 0;
+        try (ProjectValidator project = new ProjectValidator(Runtime.getRuntime().availableProcessors())) {
+            project.validate(files);
+            for (Path file : project.files()) {
+                CompilationResult result = project.result(file);
+                if (!result.isSuccessful()) allOk = false;
+                crossFileReferences += project.imports(file).size();
+                out.print(describe(file.toString(), result));
+                for (String w : project.warnings(file)) {
+                    out.println("  " + w);
+                    warnings++;
+                }
+            }
+            err.println("Project: " + project.files().size() + " files, " + project.symbolCount()
+                    + " top-level declarations, " + crossFileReferences + " cross-file references, "
+                    + warnings + " unresolved references");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+        return allOk ? 0 : 1;
+    }
+
+    // the per-file report printed in batch mode (also sent back by the compile daemon)
+    static String describe(String name, CompilationResult result) {
+        StringBuilder sb = new StringBuilder();
+        if (result.isSuccessful()) {
+            sb.append(name).append(": Compiling successful!").append(System.lineSeparator());
+        } else {
+            sb.append(name).append(": Compiling failed!").append(System.lineSeparator());
+            for (String e : result.lexicalErrors) sb.append("  ").append(e).append(System.lineSeparator());
+            for (String e : result.syntaxErrors) sb.append("  ").append(e).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,286 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Compilation cache keyed by a content hash of the source.
+// Keeps token buffers and diagnostics in a size-bounded in-memory LRU, with an optional
+// on-disk layer (TokenCodec format) so batch runs can skip lexing and parsing of unchanged files.
+// An entry is found by the 64-bit hash and length of its source and confirmed by a second,
+// differently seeded hash, so a collision of the first cannot serve another file's diagnostics.
+// Disk entries also record the compiler that wrote them and are ignored after a rebuild.
+public class CompilationCache {
+    // xxHash64 primes
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+    private static final long CHECK_SEED = 0x5DEECE66DL;
+
+    // classes whose code decides a compilation result; any change to them makes a new fingerprint
+    private static final String[] COMPILER_CLASSES = {
+            "Lexer", "Lexer$Token", "Lexer$TokenKind", "Lexer$TokenType", "Parser", "ErrorReporter",
+            "CompilationResult", "TokenCodec"
+    };
+    // identifies the compiler build, derived from its class files so no version needs bumping
+    public static final long COMPILER_FINGERPRINT = compilerFingerprint();
+
+    private static final int DISK_MAGIC = 0x4D4A5343; // "MJSC"
+    private static final int DISK_HEADER = 4 + 8 + 8 + 4; // magic, fingerprint, check hash, length
+
+    private final int maxEntries;
+    private final Path diskDir; // null when the disk layer is disabled
+    private final LinkedHashMap<Key, CompilationResult> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public CompilationCache(int maxEntries) {
+        this(maxEntries, null);
+    }
+
+    public CompilationCache(int maxEntries, Path diskDir) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be at least 1");
+        this.maxEntries = maxEntries;
+        this.diskDir = diskDir;
+        // access-ordered map, the eldest entry is the least recently used one
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CompilationResult> eldest) {
+                if (size() > CompilationCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // returns the cached result for this source, compiling (and caching) it on a miss
+    public CompilationResult compile(String code) {
+        return compile(code, null);
+    }
+
+    // metrics only see the compilations that actually run, cache hits are not measured
+    public CompilationResult compile(String code, CompilerMetrics metrics) {
+        Key key = new Key(hash(code), hash(code, CHECK_SEED), code.length());
+        CompilationResult result;
+        synchronized (entries) {
+            result = entries.get(key);
+        }
+        if (result != null) {
+            hits.incrementAndGet();
+            return result;
+        }
+
+        result = readFromDisk(key);
+        if (result != null) {
+            diskHits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            result = CompilationResult.compile(code, metrics);
+            writeToDisk(key, result);
+        }
+        synchronized (entries) {
+            entries.put(key, result);
+        }
+        return result;
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + hits.get() + ", diskHits=" + diskHits.get() + ", misses=" + misses.get()
+                + ", evictions=" + evictions.get() + ", size=" + size() + "/" + maxEntries;
+    }
+
+    // xxHash64-style hash over the UTF-16 code units, four chars per 64-bit lane
+    public static long hash(CharSequence s) {
+        return hash(s, 0);
+    }
+
+    public static long hash(CharSequence s, long seed) {
+        int len = s.length();
+        int i = 0;
+        long h;
+        if (len >= 16) {
+            long v1 = seed + P1 + P2;
+            long v2 = seed + P2;
+            long v3 = seed;
+            long v4 = seed - P1;
+            do {
+                v1 = round(v1, lane(s, i));
+                v2 = round(v2, lane(s, i + 4));
+                v3 = round(v3, lane(s, i + 8));
+                v4 = round(v4, lane(s, i + 12));
+                i += 16;
+            } while (i + 16 <= len);
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+        } else {
+            h = seed + P5;
+        }
+        h += (long) len * 2;
+
+        while (i + 4 <= len) {
+            h ^= round(0, lane(s, i));
+            h = Long.rotateLeft(h, 27) * P1 + P4;
+            i += 4;
+        }
+        while (i < len) {
+            h ^= (s.charAt(i) & 0xFFFFL) * P5;
+            h = Long.rotateLeft(h, 11) * P1;
+            i++;
+        }
+
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long lane(CharSequence s, int i) {
+        return (s.charAt(i) & 0xFFFFL)
+                | (s.charAt(i + 1) & 0xFFFFL) << 16
+                | (s.charAt(i + 2) & 0xFFFFL) << 32
+                | (s.charAt(i + 3) & 0xFFFFL) << 48;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * P2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * P1;
+    }
+
+    private static long merge(long acc, long v) {
+        acc ^= round(0, v);
+        return acc * P1 + P4;
+    }
+
+    // hash of the compiler's class files; if one cannot be read, a per-process value, so disk
+    // entries are never trusted across runs of an unidentified build
+    private static long compilerFingerprint() {
+        StringBuilder code = new StringBuilder();
+        for (String name : COMPILER_CLASSES) {
+            try (InputStream in = CompilationCache.class.getResourceAsStream("/" + name + ".class")) {
+                if (in == null) return System.nanoTime() ^ hash(name);
+                code.append(name).append('\0').append(new String(in.readAllBytes(), StandardCharsets.ISO_8859_1));
+            } catch (IOException e) {
+                return System.nanoTime() ^ hash(name);
+            }
+        }
+        return hash(code);
+    }
+
+    // ---------------- disk layer ----------------
+
+    private Path diskFile(Key key) {
+        return diskDir.resolve(String.format("%016x-%x.mjsc", key.hash, key.length));
+    }
+
+    private CompilationResult readFromDisk(Key key) {
+        if (diskDir == null) return null;
+        Path file = diskFile(key);
+        if (!Files.isRegularFile(file)) return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < DISK_HEADER) return null;
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            // written by another compiler build, or for a source that only shares the first hash
+            if (mapped.getInt() != DISK_MAGIC || mapped.getLong() != COMPILER_FINGERPRINT
+                    || mapped.getLong() != key.check || mapped.getInt() != key.length) {
+                return null;
+            }
+            // decode straight from the mapped file, no intermediate copy
+            return TokenCodec.decode(mapped.slice());
+        } catch (IOException | IllegalArgumentException e) {
+            // a corrupt or truncated entry is treated as a miss and rewritten
+            return null;
+        }
+    }
+
+    private void writeToDisk(Key key, CompilationResult result) {
+        if (diskDir == null) return;
+        try {
+            Files.createDirectories(diskDir);
+            Path file = diskFile(key);
+            Path tmp = Files.createTempFile(diskDir, "entry", ".tmp");
+            ByteBuffer header = ByteBuffer.allocate(DISK_HEADER);
+            header.putInt(DISK_MAGIC).putLong(COMPILER_FINGERPRINT).putLong(key.check).putInt(key.length).flip();
+            ByteBuffer data = TokenCodec.encode(result);
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (header.hasRemaining()) channel.write(header);
+                while (data.hasRemaining()) channel.write(data);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the disk layer is best effort, the in-memory result is still valid
+        }
+    }
+
+    private static final class Key {
+        final long hash;
+        final long check; // same function, other seed
+        final int length;
+
+        Key(long hash, long check, int length) {
+            this.hash = hash;
+            this.check = check;
+            this.length = length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return hash == other.hash && check == other.check && length == other.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash) * 31 + length;
+        }
+    }
+}
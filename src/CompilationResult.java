@@ -0,0 +1,50 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class CompilationResult {
+    public final List<Lexer.Token> tokens;
+    public final List<String> lexicalErrors;
+    public final List<String> syntaxErrors;
+
+    public CompilationResult(List<Lexer.Token> tokens, List<String> lexicalErrors, List<String> syntaxErrors) {
+        this.tokens = Collections.unmodifiableList(tokens);
+        this.lexicalErrors = Collections.unmodifiableList(lexicalErrors);
+        this.syntaxErrors = Collections.unmodifiableList(syntaxErrors);
+    }
+
+    // runs the full Lexer + Parser pass on the given source
+    public static CompilationResult compile(String code) {
+        return compile(code, null);
+    }
+
+    // same, recording phase timings and counters into metrics when it is not null
+    public static CompilationResult compile(String code, CompilerMetrics metrics) {
+        List<String> lexicalErrors = new ArrayList<>();
+        List<String> syntaxErrors = new ArrayList<>();
+        if (metrics == null) {
+            Lexer lexer = new Lexer(code, lexicalErrors);
+            Parser parser = new Parser(lexer, syntaxErrors);
+            parser.Program();
+            return new CompilationResult(lexer.getTokens(), lexicalErrors, syntaxErrors);
+        }
+
+        long allocatedBefore = CompilerMetrics.threadAllocatedBytes();
+        long start = System.nanoTime();
+        Lexer lexer = new Lexer(code, lexicalErrors);
+        long lexed = System.nanoTime();
+        Parser parser = new Parser(lexer, syntaxErrors);
+        parser.Program();
+        long parsed = System.nanoTime();
+        long allocatedAfter = CompilerMetrics.threadAllocatedBytes();
+
+        CompilationResult result = new CompilationResult(lexer.getTokens(), lexicalErrors, syntaxErrors);
+        long allocated = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore;
+        metrics.recordCompilation(code, lexed - start, parsed - lexed, allocated, result);
+        return result;
+    }
+
+    public boolean isSuccessful() {
+        return lexicalErrors.isEmpty() && syntaxErrors.isEmpty();
+    }
+}
@@ -0,0 +1,297 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Long-running compile server on a Unix domain socket, so repeated validations reuse a warm JVM.
+//   daemon: java -jar B3_Rezouali_Imane.jar --daemon [--socket <path>] [--threads <n>]
+//   client: java -jar B3_Rezouali_Imane.jar --client [--socket <path>] <file|->...
+//
+// protocol (UTF-8 text, one request per connection):
+//   request:  lines "FILE <path>" or "SOURCE <charCount> <name>" followed by exactly charCount chars,
+//             terminated by "END"; or a single "SHUTDOWN" line. Sources over MAX_SOURCE_CHARS are
+//             refused, and a refused SOURCE ends the request since its chars are not read
+//   response: "OUT <line>" for every line of the batch mode report, then "EXIT <code>"
+public class CompileDaemon {
+    private static final int WARMUP_ROUNDS = 3000;
+    // largest source accepted, in chars (FILE: in bytes), so a request cannot exhaust the heap
+    public static final int MAX_SOURCE_CHARS = 16 * ValidationService.DEFAULT_MAX_INPUT_CHARS;
+    // larger sources are compiled without caching, so the cache stays bounded in chars, not only entries
+    private static final int MAX_CACHED_CHARS = ValidationService.DEFAULT_MAX_INPUT_CHARS;
+
+    private final Path socketPath;
+    private final ExecutorService workers;
+    private final CompilationCache cache = new CompilationCache(512);
+    private volatile ServerSocketChannel server;
+
+    public CompileDaemon(Path socketPath, int threads) {
+        this.socketPath = socketPath;
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "compile-daemon-worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static Path defaultSocket() {
+        return Paths.get(System.getProperty("java.io.tmpdir"), "minijs-" + System.getProperty("user.name") + ".sock");
+    }
+
+    public static int runDaemon(String[] args, PrintStream err) {
+        Path socket = defaultSocket();
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            if ("--socket".equals(args[i]) && i + 1 < args.length) {
+                socket = Paths.get(args[++i]);
+            } else if ("--threads".equals(args[i]) && i + 1 < args.length) {
+                try {
+                    threads = Math.max(1, Integer.parseInt(args[++i]));
+                } catch (NumberFormatException e) {
+                    err.println("Invalid thread count: " + args[i]);
+                    return 2;
+                }
+            } else {
+                err.println("Unknown option: " + args[i]);
+                return 2;
+            }
+        }
+        try {
+            new CompileDaemon(socket, threads).serve(err);
+            return 0;
+        } catch (IOException e) {
+            err.println("Compile daemon failed: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    // blocks until a SHUTDOWN request arrives
+    public void serve(PrintStream log) throws IOException {
+        warmUp();
+        // checked after the warm-up, right before the socket is replaced, so a daemon started
+        // meanwhile is not unlinked
+        if (Files.exists(socketPath) && isListening(socketPath)) {
+            throw new IOException("another compile daemon is already listening on " + socketPath);
+        }
+        Files.deleteIfExists(socketPath); // stale socket from a previous run
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socketPath));
+        log.println("Compile daemon listening on " + socketPath);
+        try {
+            while (server.isOpen()) {
+                SocketChannel client;
+                try {
+                    client = server.accept();
+                } catch (IOException e) {
+                    if (!server.isOpen()) break; // closed by SHUTDOWN
+                    throw e;
+                }
+                workers.execute(() -> handle(client));
+            }
+        } finally {
+            workers.shutdown();
+            Files.deleteIfExists(socketPath);
+        }
+    }
+
+    // true if a server accepts connections on the socket; a socket file nobody answers on is
+    // left over from a daemon that did not shut down cleanly
+    private static boolean isListening(Path socket) {
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(socket)).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // run the Lexer and Parser hot paths until the JIT has compiled them
+    private static void warmUp() {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            CompilationResult.compile(Main.TRAINING_SOURCE);
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try (SocketChannel channel = client) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+            Writer out = new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8);
+            boolean allOk = true;
+            String line;
+            while ((line = in.readLine()) != null && !"END".equals(line)) {
+                if ("SHUTDOWN".equals(line)) {
+                    out.write("EXIT 0\n");
+                    out.flush();
+                    server.close();
+                    return;
+                }
+                String name;
+                String code;
+                if (line.startsWith("FILE ")) {
+                    name = line.substring(5);
+                    try {
+                        Path file = Paths.get(name);
+                        if (Files.size(file) > MAX_SOURCE_CHARS) {
+                            send(out, name + ": file too large (limit " + MAX_SOURCE_CHARS + " bytes)\n");
+                            allOk = false;
+                            continue;
+                        }
+                        code = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+                    } catch (IOException e) {
+                        send(out, name + ": cannot read file (" + e.getMessage() + ")\n");
+                        allOk = false;
+                        continue;
+                    }
+                } else if (line.startsWith("SOURCE ")) {
+                    String[] parts = line.split(" ", 3);
+                    int length = Integer.parseInt(parts[1]);
+                    name = parts.length > 2 ? parts[2] : "<stdin>";
+                    if (length < 0 || length > MAX_SOURCE_CHARS) {
+                        // the unread chars would be taken for requests, so the request ends here
+                        send(out, name + ": source too large (" + length + " chars, limit " + MAX_SOURCE_CHARS + ")\n");
+                        allOk = false;
+                        break;
+                    }
+                    char[] buf = new char[length];
+                    int read = 0;
+                    while (read < length) {
+                        int n = in.read(buf, read, length - read);
+                        if (n < 0) throw new IOException("Truncated source");
+                        read += n;
+                    }
+                    code = new String(buf);
+                } else {
+                    send(out, "Unknown request: " + line + "\n");
+                    allOk = false;
+                    continue;
+                }
+                CompilationResult result = code.length() > MAX_CACHED_CHARS ? CompilationResult.compile(code) : cache.compile(code);
+                if (!result.isSuccessful()) allOk = false;
+                send(out, BatchCompiler.describe(name, result));
+            }
+            out.write("EXIT " + (allOk ? 0 : 1) + "\n");
+            out.flush();
+        } catch (IOException | RuntimeException e) {
+            // a broken request only affects its own connection
+        }
+    }
+
+    private static void send(Writer out, String report) throws IOException {
+        for (String l : report.split("\\R")) {
+            out.write("OUT " + l + "\n");
+        }
+    }
+
+    // ---------------- client ----------------
+
+    // forwards the files (or '-' for stdin) to a running daemon and prints its report;
+    // without a daemon the files are validated in-process instead
+    public static int runClient(String[] args, InputStream stdin, PrintStream out, PrintStream err) {
+        Path socket = defaultSocket();
+        List<String> inputs = new ArrayList<>();
+        boolean shutdown = false;
+        for (int i = 0; i < args.length; i++) {
+            if ("--socket".equals(args[i]) && i + 1 < args.length) {
+                socket = Paths.get(args[++i]);
+            } else if ("--shutdown".equals(args[i])) {
+                shutdown = true;
+            } else {
+                inputs.add(args[i]);
+            }
+        }
+        if (inputs.isEmpty() && !shutdown) {
+            err.println("usage: java -jar B3_Rezouali_Imane.jar --client [--socket <path>] [--shutdown] <file|->...");
+            return 2;
+        }
+
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            if (shutdown) {
+                err.println("No compile daemon at " + socket);
+                return 1;
+            }
+            err.println("No compile daemon at " + socket + ", validating in-process");
+            return validateLocally(inputs, stdin, out, err);
+        }
+
+        try (SocketChannel c = channel) {
+            Writer w = new OutputStreamWriter(Channels.newOutputStream(c), StandardCharsets.UTF_8);
+            if (shutdown) {
+                w.write("SHUTDOWN\n");
+            } else {
+                for (String input : inputs) {
+                    if ("-".equals(input)) {
+                        String code = new String(readAll(stdin), StandardCharsets.UTF_8);
+                        w.write("SOURCE " + code.length() + " <stdin>\n");
+                        w.write(code);
+                    } else {
+                        // the daemon may run in another directory
+                        w.write("FILE " + Paths.get(input).toAbsolutePath() + "\n");
+                    }
+                }
+                w.write("END\n");
+            }
+            w.flush();
+
+            BufferedReader r = new BufferedReader(new InputStreamReader(Channels.newInputStream(c), StandardCharsets.UTF_8));
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.startsWith("OUT ")) {
+                    out.println(line.substring(4));
+                } else if (line.startsWith("EXIT ")) {
+                    return Integer.parseInt(line.substring(5).trim());
+                }
+            }
+            err.println("Compile daemon closed the connection");
+            return 1;
+        } catch (IOException | NumberFormatException e) {
+            err.println("Compile daemon request failed: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private static int validateLocally(List<String> inputs, InputStream stdin, PrintStream out, PrintStream err) {
+        boolean allOk = true;
+        for (String input : inputs) {
+            String code;
+            try {
+                byte[] bytes = "-".equals(input) ? readAll(stdin) : Files.readAllBytes(Paths.get(input));
+                code = new String(bytes, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                err.println(input + ": cannot read file (" + e.getMessage() + ")");
+                allOk = false;
+                continue;
+            }
+            CompilationResult result = CompilationResult.compile(code);
+            if (!result.isSuccessful()) allOk = false;
+            out.print(BatchCompiler.describe("-".equals(input) ? "<stdin>" : input, result));
+        }
+        return allOk ? 0 : 1;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) > 0) bytes.write(buf, 0, n);
+        return bytes.toByteArray();
+    }
+}
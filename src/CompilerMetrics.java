@@ -0,0 +1,146 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Opt-in pipeline metrics: per-phase wall time, per-TokenType counts, throughput,
+// error counts by ErrorReporter category and bytes allocated by the compiling thread.
+// Nothing is measured unless a CompilerMetrics instance is passed in, so the default
+// path pays nothing. Enable it in the IDE with -Dminijs.metrics=true or the "Metrics" box.
+public class CompilerMetrics {
+    private long compilations;
+    private long lexNanos;
+    private long parseNanos;
+    private long highlightNanos;
+    private long sourceBytes;
+    private long allocatedBytes;
+    private final long[] tokenCounts = new long[Lexer.TokenType.values().length];
+    private final Map<String, Long> errorsByCategory = new LinkedHashMap<>();
+
+    public static boolean enabledByDefault() {
+        return Boolean.getBoolean("minijs.metrics");
+    }
+
+    // current thread's allocated bytes, or -1 when the JVM does not support it
+    static long threadAllocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean) threads;
+            if (t.isThreadAllocatedMemorySupported() && t.isThreadAllocatedMemoryEnabled()) {
+                return t.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    synchronized void recordCompilation(String code, long lexNanos, long parseNanos, long allocated,
+                                        CompilationResult result) {
+        compilations++;
+        this.lexNanos += lexNanos;
+        this.parseNanos += parseNanos;
+        this.sourceBytes += utf8Length(code);
+        if (allocated > 0) this.allocatedBytes += allocated;
+        for (Lexer.Token t : result.tokens) tokenCounts[t.type.ordinal()]++;
+        countErrors(result.lexicalErrors);
+        countErrors(result.syntaxErrors);
+    }
+
+    public synchronized void recordHighlight(long nanos) {
+        highlightNanos += nanos;
+    }
+
+    private void countErrors(List<String> errors) {
+        for (String e : errors) errorsByCategory.merge(ErrorReporter.categoryOf(e), 1L, Long::sum);
+    }
+
+    private static long utf8Length(String s) {
+        long n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) n++;
+            else if (c < 0x800) n += 2;
+            else if (Character.isHighSurrogate(c)) { n += 4; i++; }
+            else n += 3;
+        }
+        return n;
+    }
+
+    public synchronized long getCompilations() {
+        return compilations;
+    }
+
+    public synchronized long getLexNanos() {
+        return lexNanos;
+    }
+
+    public synchronized long getParseNanos() {
+        return parseNanos;
+    }
+
+    public synchronized long getHighlightNanos() {
+        return highlightNanos;
+    }
+
+    public synchronized long getSourceBytes() {
+        return sourceBytes;
+    }
+
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public synchronized long getTokenCount(Lexer.TokenType type) {
+        return tokenCounts[type.ordinal()];
+    }
+
+    public synchronized Map<String, Long> getErrorsByCategory() {
+        return new LinkedHashMap<>(errorsByCategory);
+    }
+
+    // lexing + parsing throughput
+    public synchronized double getBytesPerSecond() {
+        long nanos = lexNanos + parseNanos;
+        return nanos == 0 ? 0 : sourceBytes * 1e9 / nanos;
+    }
+
+    public synchronized Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("compilations", compilations);
+        Map<String, Object> phases = new LinkedHashMap<>();
+        phases.put("lexMillis", lexNanos / 1e6);
+        phases.put("parseMillis", parseNanos / 1e6);
+        phases.put("highlightMillis", highlightNanos / 1e6);
+        map.put("phases", phases);
+        map.put("sourceBytes", sourceBytes);
+        map.put("bytesPerSecond", Math.round(getBytesPerSecond()));
+        map.put("allocatedBytes", allocatedBytes);
+        Map<String, Object> tokens = new LinkedHashMap<>();
+        for (Lexer.TokenType type : Lexer.TokenType.values()) tokens.put(type.name(), tokenCounts[type.ordinal()]);
+        map.put("tokens", tokens);
+        map.put("errors", new LinkedHashMap<>(errorsByCategory));
+        return map;
+    }
+
+    public String toJson() {
+        return Json.write(toMap());
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Lexing: %.3f ms, Parsing: %.3f ms, Highlighting: %.3f ms%n",
+                lexNanos / 1e6, parseNanos / 1e6, highlightNanos / 1e6));
+        sb.append(String.format("Source: %d bytes, %.0f bytes/sec, allocated: %d bytes%n",
+                sourceBytes, getBytesPerSecond(), allocatedBytes));
+        sb.append("Tokens:");
+        for (Lexer.TokenType type : Lexer.TokenType.values()) {
+            long n = tokenCounts[type.ordinal()];
+            if (n > 0) sb.append(' ').append(type).append('=').append(n);
+        }
+        sb.append(System.lineSeparator());
+        sb.append("Errors: ").append(errorsByCategory.isEmpty() ? "none" : errorsByCategory.toString());
+        sb.append(System.lineSeparator());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,434 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Differential fuzzer: runs random and mutated sources, valid or not, through the reference
+// (ReferenceLexer + Parser) and through every engine built on the optimized Lexer, and compares
+// token streams (type, kind, value, line, offset, number value) and both error lists. A failing
+// input is shrunk with delta debugging and saved as a regression case, which later runs replay
+// first. Inputs the old lexer reads differently only because of an intended change (templates,
+// regex, numeric forms) are not failures; they are counted per change in the summary.
+// usage: java -jar B3_Rezouali_Imane.jar --fuzz [--seed <n>] [--count <n>] [--max-length <n>]
+//            [--corpus <dir>] [--regressions <dir>] [--time-limit <ms>]
+public class DifferentialFuzzer implements AutoCloseable {
+    private static final int MAX_SAVED = 20;
+    private static final int MINIMIZE_BUDGET = 2000; // checks per minimization
+
+    // building blocks for generated sources: whitespace, comments, literals of every kind,
+    // keywords, operators, delimiters and a few characters the lexer rejects
+    private static final String[] ATOMS = {
+            " ", "  ", "\t", "\n", "\r\n", "\u00a0", "\u2003", "\u000b", "//", "/*", "*/", "*", "/", "\"", "'",
+            "\\", "\0", "`", "${", "}", "{", "(", ")", "[", "]", ";", ",", ".", "=", "==", "===", "+", "-", "++",
+            "<=", ">>>=", "&&", "?.", "=>", "!", "a", "xy", "$_", "do", "while", "let", "const", "var", "export",
+            "return", "this", "Imane", "1", "0", "2.5", ".5", "1.2.3", "1e9", "1e+", "0xFF", "0b12", "0o7", "1_000", "1__0",
+            "10n", "017", "08", "09.5", "number", "typeof", "case", "\"str\"", "'s\\'q'", "`t${x}`", "/re[/]g/i", "#", "@", "\u00e9", "\ud83d\ude00"
+    };
+
+    // parser cases with known answers, which a differential run cannot catch (every engine shares
+    // the Parser): a source and the lines of its expected syntax errors, "" for none
+    private static final String[][] PARSER_CASES = {
+            {"function f() {}\nlet x = 1;", ""},
+            {"if (a) {}\nlet x = 1;", ""},
+            {"for (;;) {}", ""},
+            {"for (;;) {}\nlet z = ;", "2"},
+            {"let o = {};\nlet y = 2;", "1"},
+            {"{\n}", ""},
+            {"do { if (a) {} x = 1; } while (x);", ""},
+            {"do { let o = {a: {b: 1}}; } while (x);\nlet y = 2;", "1"},
+    };
+
+    // an implementation that must agree with the reference
+    private static final class Engine {
+        final String name;
+        final Function<String, CompilationResult> compile;
+
+        Engine(String name, Function<String, CompilationResult> compile) {
+            this.name = name;
+            this.compile = compile;
+        }
+    }
+
+    // first disagreement found for an input
+    private static final class Failure {
+        final String engine;
+        final String detail;
+
+        Failure(String engine, String detail) {
+            this.engine = engine;
+            this.detail = detail;
+        }
+    }
+
+    private final List<Engine> engines = new ArrayList<>();
+    private final ValidationService service = new ValidationService(Integer.MAX_VALUE, Integer.MAX_VALUE, Parser.DEFAULT_MAX_DEPTH);
+    private final long timeLimitMillis;
+    private ExecutorService runner = newRunner();
+
+    public DifferentialFuzzer(long timeLimitMillis) {
+        this.timeLimitMillis = timeLimitMillis;
+        addEngine("lexer", CompilationResult::compile);
+        addEngine("codec", code -> TokenCodec.decode(TokenCodec.encode(CompilationResult.compile(code))));
+        addEngine("reparse", code -> {
+            CompilationResult lexed = CompilationResult.compile(code);
+            List<String> syntaxErrors = new ArrayList<>();
+            new Parser(new ArrayList<>(lexed.tokens), syntaxErrors).Program();
+            return new CompilationResult(new ArrayList<>(lexed.tokens), new ArrayList<>(lexed.lexicalErrors), syntaxErrors);
+        });
+        addEngine("metrics", code -> CompilationResult.compile(code, new CompilerMetrics()));
+        addEngine("service", service::validateNow);
+        addEngine("cache", code -> {
+            CompilationCache cache = new CompilationCache(1);
+            cache.compile(code);
+            return cache.compile(code);
+        });
+    }
+
+    // registers another implementation (e.g. a faster lexer) to compare against the reference
+    public void addEngine(String name, Function<String, CompilationResult> compile) {
+        engines.add(new Engine(name, compile));
+    }
+
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        long seed = System.nanoTime();
+        int count = 10_000;
+        int maxLength = 60;
+        long timeLimit = 2000;
+        Path corpus = null;
+        Path regressions = Paths.get("fuzz-regressions");
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if ("--seed".equals(arg) && i + 1 < args.length) {
+                    seed = Long.parseLong(args[++i]);
+                } else if ("--count".equals(arg) && i + 1 < args.length) {
+                    count = Integer.parseInt(args[++i]);
+                } else if ("--max-length".equals(arg) && i + 1 < args.length) {
+                    maxLength = Integer.parseInt(args[++i]);
+                } else if ("--time-limit".equals(arg) && i + 1 < args.length) {
+                    timeLimit = Long.parseLong(args[++i]);
+                } else if ("--corpus".equals(arg) && i + 1 < args.length) {
+                    corpus = Paths.get(args[++i]);
+                } else if ("--regressions".equals(arg) && i + 1 < args.length) {
+                    regressions = Paths.get(args[++i]);
+                } else {
+                    err.println("Unknown option: " + arg);
+                    return 2;
+                }
+            }
+        } catch (NumberFormatException e) {
+            err.println("Invalid number: " + e.getMessage());
+            return 2;
+        }
+
+        try (DifferentialFuzzer fuzzer = new DifferentialFuzzer(timeLimit)) {
+            return fuzzer.fuzz(seed, count, maxLength, corpus, regressions, out);
+        } catch (IOException e) {
+            err.println("Fuzzing failed: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    // checks the parser cases and replays the saved regressions, then checks 'count' generated
+    // inputs; returns the exit code
+    public int fuzz(long seed, int count, int maxLength, Path corpus, Path regressions, PrintStream out) throws IOException {
+        Map<Path, String> saved = readSources(regressions);
+        int failures = 0;
+        for (String[] c : PARSER_CASES) {
+            String lines = CompilationResult.compile(c[0]).syntaxErrors.stream()
+                    .map(e -> String.valueOf(ErrorReporter.lineOf(e))).collect(Collectors.joining(","));
+            if (!lines.equals(c[1])) {
+                failures++;
+                out.println("Parser case " + printable(c[0]) + " reports errors on lines [" + lines + "], expected [" + c[1] + "]");
+            }
+        }
+        for (Map.Entry<Path, String> e : saved.entrySet()) {
+            Failure f = check(e.getValue());
+            if (f != null) {
+                failures++;
+                out.println("Regression " + e.getKey() + " still fails: [" + f.engine + "] " + f.detail);
+            }
+        }
+
+        List<String> seeds = new ArrayList<>();
+        seeds.add(Main.TRAINING_SOURCE);
+        seeds.addAll(readSources(corpus).values());
+        seeds.addAll(saved.values());
+
+        out.println("Fuzzing " + count + " inputs against " + engines.size() + " engines (seed " + seed + ")");
+        Random rnd = new Random(seed);
+        int savedNow = 0;
+        Set<String> known = new HashSet<>(saved.values());
+        Map<ReferenceLexer.Change, Integer> intended = new EnumMap<>(ReferenceLexer.Change.class);
+        for (int k = 0; k < count; k++) {
+            String source = rnd.nextBoolean() ? generate(rnd, maxLength) : mutate(rnd, seeds);
+            Failure f = check(source);
+            if (f == null) {
+                for (ReferenceLexer.Change change : intendedChanges(source)) intended.merge(change, 1, Integer::sum);
+                continue;
+            }
+            failures++;
+            String minimal = f.engine.equals("timeout") ? source : minimize(source, f.engine);
+            if (!known.add(minimal)) continue; // shrinks to a case already reported
+            Failure shown = check(minimal);
+            if (shown == null) shown = f;
+            out.println("Mismatch [" + shown.engine + "] on " + printable(minimal) + ": " + shown.detail);
+            if (savedNow < MAX_SAVED) {
+                Files.createDirectories(regressions);
+                Path file = save(regressions, shown.engine, minimal);
+                out.println("  saved to " + file);
+                savedNow++;
+            }
+        }
+        out.println("Fuzzing done: " + count + " inputs, " + saved.size() + " regressions replayed, " + failures
+                + " failures (" + savedNow + " new cases saved)");
+        out.println("Read differently by the old lexer through intended changes: " + intended);
+        return failures == 0 ? 0 : 1;
+    }
+
+    // first engine disagreeing with the reference on this input, or null if all agree;
+    // an input that does not finish within the time limit fails as "timeout"
+    Failure check(String source) {
+        Future<Failure> result = runner.submit(() -> compare(source));
+        try {
+            return result.get(timeLimitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            // the stuck thread cannot be reclaimed, later inputs get a fresh one
+            runner.shutdownNow();
+            runner = newRunner();
+            return new Failure("timeout", "no result after " + timeLimitMillis + " ms");
+        } catch (ExecutionException e) {
+            return new Failure("reference", "threw " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Failure("interrupted", "fuzzing interrupted");
+        }
+    }
+
+    private Failure compare(String source) {
+        CompilationResult expected = reference(source);
+        for (Engine engine : engines) {
+            CompilationResult actual;
+            try {
+                actual = engine.compile.apply(source);
+            } catch (RuntimeException e) {
+                return new Failure(engine.name, "threw " + e);
+            }
+            String diff = difference(expected, actual);
+            if (diff != null) return new Failure(engine.name, diff);
+        }
+        return null;
+    }
+
+    // the unoptimized lexer with every intended change, and the Parser
+    static CompilationResult reference(String source) {
+        List<String> lexicalErrors = new ArrayList<>();
+        List<String> syntaxErrors = new ArrayList<>();
+        ReferenceLexer lexer = new ReferenceLexer(source, lexicalErrors, ReferenceLexer.ALL);
+        new Parser(lexer.getTokens(), syntaxErrors).Program();
+        return new CompilationResult(lexer.getTokens(), lexicalErrors, syntaxErrors);
+    }
+
+    // the intended changes that alter how this input lexes: those whose removal from the
+    // reference changes its tokens or lexical errors. Without template support the old lexer
+    // never finishes an input with a '`', so such an input counts for templates unseen
+    static Set<ReferenceLexer.Change> intendedChanges(String source) {
+        Set<ReferenceLexer.Change> found = EnumSet.noneOf(ReferenceLexer.Change.class);
+        CompilationResult all = lexOnly(source, ReferenceLexer.ALL);
+        for (ReferenceLexer.Change change : ReferenceLexer.Change.values()) {
+            if (change == ReferenceLexer.Change.TEMPLATES && source.indexOf('`') >= 0) {
+                found.add(change);
+                continue;
+            }
+            Set<ReferenceLexer.Change> without = EnumSet.copyOf(ReferenceLexer.ALL);
+            without.remove(change);
+            if (difference(all, lexOnly(source, without)) != null) found.add(change);
+        }
+        return found;
+    }
+
+    private static CompilationResult lexOnly(String source, Set<ReferenceLexer.Change> changes) {
+        List<String> lexicalErrors = new ArrayList<>();
+        ReferenceLexer lexer = new ReferenceLexer(source, lexicalErrors, changes);
+        return new CompilationResult(lexer.getTokens(), lexicalErrors, new ArrayList<>());
+    }
+
+    // description of the first difference between two results, null if they are the same
+    static String difference(CompilationResult expected, CompilationResult actual) {
+        int n = Math.min(expected.tokens.size(), actual.tokens.size());
+        for (int i = 0; i < n; i++) {
+            Lexer.Token e = expected.tokens.get(i);
+            Lexer.Token a = actual.tokens.get(i);
+            if (e.type != a.type || e.kind != a.kind || !e.value.equals(a.value) || e.line != a.line
+                    || e.offset != a.offset || Double.compare(e.numberValue, a.numberValue) != 0
+                    || !Objects.equals(e.bigIntValue, a.bigIntValue)) {
+                return "token " + i + ": expected " + describe(e) + ", got " + describe(a);
+            }
+        }
+        if (expected.tokens.size() != actual.tokens.size()) {
+            return "expected " + expected.tokens.size() + " tokens, got " + actual.tokens.size();
+        }
+        if (!expected.lexicalErrors.equals(actual.lexicalErrors)) {
+            return "lexical errors: expected " + expected.lexicalErrors + ", got " + actual.lexicalErrors;
+        }
+        if (!expected.syntaxErrors.equals(actual.syntaxErrors)) {
+            return "syntax errors: expected " + expected.syntaxErrors + ", got " + actual.syntaxErrors;
+        }
+        return null;
+    }
+
+    // delta debugging over characters: keep dropping chunks while the same engine still fails
+    String minimize(String input, String engine) {
+        String current = input;
+        int granularity = 2;
+        int budget = MINIMIZE_BUDGET;
+        while (current.length() >= 2 && budget > 0) {
+            int chunk = (current.length() + granularity - 1) / granularity;
+            boolean reduced = false;
+            for (int start = 0; start < current.length() && budget > 0; start += chunk) {
+                String candidate = current.substring(0, start) + current.substring(Math.min(current.length(), start + chunk));
+                budget--;
+                Failure f = check(candidate);
+                if (f != null && f.engine.equals(engine)) {
+                    current = candidate;
+                    granularity = Math.max(granularity - 1, 2);
+                    reduced = true;
+                    break;
+                }
+            }
+            if (!reduced) {
+                if (granularity >= current.length()) break;
+                granularity = Math.min(granularity * 2, current.length());
+            }
+        }
+        return current;
+    }
+
+    static String generate(Random rnd, int maxLength) {
+        StringBuilder sb = new StringBuilder();
+        int atoms = rnd.nextInt(maxLength + 1);
+        for (int i = 0; i < atoms; i++) sb.append(ATOMS[rnd.nextInt(ATOMS.length)]);
+        return sb.toString();
+    }
+
+    // one to four random edits of a seed: insert an atom or a random char, delete, duplicate
+    // or splice in a slice of another seed
+    static String mutate(Random rnd, List<String> seeds) {
+        StringBuilder sb = new StringBuilder(seeds.get(rnd.nextInt(seeds.size())));
+        int edits = 1 + rnd.nextInt(4);
+        for (int e = 0; e < edits; e++) {
+            int at = rnd.nextInt(sb.length() + 1);
+            int to = Math.min(sb.length(), at + rnd.nextInt(17));
+            switch (rnd.nextInt(5)) {
+                case 0:
+                    sb.insert(at, ATOMS[rnd.nextInt(ATOMS.length)]);
+                    break;
+                case 1:
+                    sb.insert(at, (char) rnd.nextInt(0x3000));
+                    break;
+                case 2:
+                    sb.delete(at, to);
+                    break;
+                case 3:
+                    sb.insert(at, sb.substring(at, to));
+                    break;
+                default:
+                    String other = seeds.get(rnd.nextInt(seeds.size()));
+                    int from = rnd.nextInt(other.length() + 1);
+                    sb.insert(at, other, from, Math.min(other.length(), from + 1 + rnd.nextInt(32)));
+            }
+        }
+        return sb.toString();
+    }
+
+    // saved as UTF-8 .js, or as raw UTF-16 .u16 when the case has an unpaired surrogate that
+    // UTF-8 would replace by '?'
+    private static Path save(Path dir, String engine, String source) throws IOException {
+        String name = String.format("%s-%016x", engine, CompilationCache.hash(source));
+        byte[] utf8 = source.getBytes(StandardCharsets.UTF_8);
+        if (new String(utf8, StandardCharsets.UTF_8).equals(source)) {
+            Path file = dir.resolve(name + ".js");
+            Files.write(file, utf8);
+            return file;
+        }
+        ByteBuffer raw = ByteBuffer.allocate(source.length() * 2);
+        raw.asCharBuffer().put(source);
+        Path file = dir.resolve(name + ".u16");
+        Files.write(file, raw.array());
+        return file;
+    }
+
+    private static Map<Path, String> readSources(Path dir) throws IOException {
+        Map<Path, String> sources = new LinkedHashMap<>();
+        if (dir == null || !Files.isDirectory(dir)) return sources;
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            files = walk.filter(p -> Files.isRegularFile(p) && (p.toString().endsWith(".js") || p.toString().endsWith(".u16")))
+                    .sorted(Comparator.naturalOrder()).collect(Collectors.toList());
+        }
+        for (Path p : files) {
+            byte[] bytes = Files.readAllBytes(p);
+            sources.put(p, p.toString().endsWith(".u16") ? ByteBuffer.wrap(bytes).asCharBuffer().toString()
+                    : new String(bytes, StandardCharsets.UTF_8));
+        }
+        return sources;
+    }
+
+    private static String describe(Lexer.Token t) {
+        return t.type + "/" + t.kind + " " + printable(t.value) + " line " + t.line + " @" + t.offset
+                + (t.type == Lexer.TokenType.NUMBER ? " = " + (t.bigIntValue != null ? t.bigIntValue + "n" : t.numberValue) : "");
+    }
+
+    // the input as a Java-style string literal, so control chars survive the console
+    static String printable(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c == '\n') sb.append("\\n");
+            else if (c == '\r') sb.append("\\r");
+            else if (c == '\t') sb.append("\\t");
+            else if (c < 0x20 || c > 0x7e) sb.append(String.format("\\u%04x", (int) c));
+            else sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+
+    private static ExecutorService newRunner() {
+        return Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "fuzz-runner");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public void close() {
+        runner.shutdownNow();
+        service.close();
+    }
+}
@@ -21,6 +21,16 @@ public class ErrorReporter {
         return reportLexicalError(line, column, "Unterminated multi-line comment");
     }
 
+    // Unterminated template literal (or one of its ${...} substitutions)
+    public static String reportUnterminatedTemplate(int line, int column) {
+        return reportLexicalError(line, column, "Unterminated template literal");
+    }
+
+    // Unterminated regular expression literal
+    public static String reportUnterminatedRegex(int line, int column) {
+        return reportLexicalError(line, column, "Unterminated regular expression literal");
+    }
+
     // Invalid token
     public static String reportInvalidToken(int line, int column, String token) {
         return reportLexicalError(line, column, "Invalid token -> " + token);
@@ -52,6 +62,17 @@ public class ErrorReporter {
         return "Error at line " + line + colStr + ": Missing " + missingDescription;
     }
 
+    // Warnings: reported like errors but never make a compilation fail.
+    public static String reportWarning(int line, String message) {
+        return "Warning at line " + line + ": " + message;
+    }
+
+    // Identifier that is declared neither in its own file, nor at the top level of another
+    // file of the project, nor as a known global.
+    public static String reportUnresolvedReference(int line, String name) {
+        return reportWarning(line, "Unresolved reference '" + name + "'");
+    }
+
     // Convenience when an identifier was expected.
     public static String reportIdentifierExpected(int line, int column) {
         return reportMissingToken(line, column, "identifier");
@@ -63,4 +84,66 @@ public class ErrorReporter {
     }
 
 
+
+
+
+    // Helpers to read the parts back from a reported error
+    // ("Error at line <line>[, column <column>]: <message>", or "Warning at line ..."), e.g. for
+    // editor diagnostics.
+    private static final String PREFIX = "Error at line ";
+    private static final String WARNING_PREFIX = "Warning at line ";
+
+    public static boolean isWarning(String error) {
+        return error != null && error.startsWith(WARNING_PREFIX);
+    }
+
+    // line of the error, or -1 if the string is not a reported error
+    public static int lineOf(String error) {
+        if (error == null) return -1;
+        String prefix = isWarning(error) ? WARNING_PREFIX : PREFIX;
+        if (!error.startsWith(prefix)) return -1;
+        int i = prefix.length();
+        int start = i;
+        while (i < error.length() && Character.isDigit(error.charAt(i))) i++;
+        if (i == start) return -1;
+        return Integer.parseInt(error.substring(start, i));
+    }
+
+    // column of the error, or 0 if it was reported without one
+    public static int columnOf(String error) {
+        int colon = error != null ? error.indexOf(':') : -1;
+        int at = error != null ? error.indexOf(", column ") : -1;
+        if (at < 0 || colon < 0 || at > colon) return 0;
+        int i = at + ", column ".length();
+        int start = i;
+        while (i < error.length() && Character.isDigit(error.charAt(i))) i++;
+        if (i == start) return 0;
+        return Integer.parseInt(error.substring(start, i));
+    }
+
+    // category of a reported error, following the report* helpers above
+    public static String categoryOf(String error) {
+        String message = messageOf(error);
+        if (message == null) return "unknown";
+        if (message.startsWith("Unexpected character")) return "unexpected-character";
+        if (message.startsWith("Unterminated string literal")) return "unterminated-string";
+        if (message.startsWith("Unterminated multi-line comment")) return "unterminated-comment";
+        if (message.startsWith("Unterminated template literal")) return "unterminated-template";
+        if (message.startsWith("Unterminated regular expression")) return "unterminated-regex";
+        if (message.startsWith("Invalid token")) return "invalid-token";
+        if (message.startsWith("Invalid number")) return "invalid-number";
+        if (message.startsWith("Expected ") && message.contains(", but found ")) return "unexpected-token";
+        if (message.startsWith("Missing ")) return "missing-token";
+        if (message.startsWith("Unresolved reference")) return "unresolved-reference";
+        return "syntax";
+    }
+
+    // message without the "Error at line ..." location prefix
+    public static String messageOf(String error) {
+        if (error == null || !(error.startsWith(PREFIX) || isWarning(error))) return error;
+        int colon = error.indexOf(": ");
+        return colon < 0 ? error : error.substring(colon + 2);
+    }
+
+
 }
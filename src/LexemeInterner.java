@@ -0,0 +1,91 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free intern table for lexemes, shared by every Lexer (and so every compilation thread).
+// Lookups are keyed directly on a char range of the source: a lexeme already in the table is
+// found by hash and regionMatches without building a String first, so repeated identifiers,
+// keywords and strings ("console", "log", "i") are allocated once instead of once per token.
+//
+// Open addressing over an AtomicReferenceArray: a free slot is claimed with compareAndSet, and
+// when the short probe sequence is full the home slot is overwritten, so the table never grows
+// past its capacity. An evicted String stays valid for the tokens holding it; interning is
+// only best-effort deduplication, never identity that callers may rely on.
+public final class LexemeInterner {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    // longer lexemes rarely repeat and would pin memory in the table
+    public static final int MAX_LEXEME_LENGTH = 64;
+    private static final int PROBES = 8;
+
+    // the table all Lexers use unless given their own
+    public static final LexemeInterner SHARED = new LexemeInterner(DEFAULT_CAPACITY);
+
+    private final AtomicReferenceArray<String> slots;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // capacity is rounded up to a power of two
+    public LexemeInterner(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        int size = Integer.highestOneBit(Math.max(PROBES, capacity - 1) << 1);
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    // the String for code[start, end), shared with earlier lexemes of the same content
+    public String intern(String code, int start, int end) {
+        int length = end - start;
+        if (length > MAX_LEXEME_LENGTH) return code.substring(start, end);
+
+        // same polynomial as String.hashCode, so a candidate's cached hash can be compared first
+        int h = 0;
+        for (int i = start; i < end; i++) h = 31 * h + code.charAt(i);
+        int home = (h ^ (h >>> 16)) & mask;
+
+        for (int p = 0; p < PROBES; p++) {
+            int slot = (home + p) & mask;
+            String s = slots.get(slot);
+            if (s == null) {
+                String created = code.substring(start, end);
+                if (slots.compareAndSet(slot, null, created)) {
+                    misses.increment();
+                    return created;
+                }
+                s = slots.get(slot); // another thread claimed the slot first, it may hold our lexeme
+            }
+            if (s != null && s.hashCode() == h && s.length() == length && s.regionMatches(0, code, start, length)) {
+                hits.increment();
+                return s;
+            }
+        }
+
+        // probe sequence full: evict whatever lives in the home slot
+        String created = code.substring(start, end);
+        slots.set(home, created);
+        misses.increment();
+        evictions.increment();
+        return created;
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + ", capacity=" + capacity();
+    }
+}
@@ -1,6 +1,7 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.BooleanSupplier;
 
 public class Lexer {
     //initialization of my keywords,personal keywords and operators
@@ -18,6 +19,11 @@ public class Lexer {
             "==", "!=", "=>", "?", ":", ".", "+", "-", "*", "/", "%", "=", "&", "|",
             "^", "~", "!", "?.", "++", "--", "<", ">"
     };
+    // the operators with the '\0' end marker the matching loops stop on, built once
+    private static final String[] OperatorsWithSentinel = new String[Operators.length];
+    static {
+        for (int k = 0; k < Operators.length; k++) OperatorsWithSentinel[k] = Operators[k] + '\0';
+    }
     // token types
     public enum TokenType {
         KEYWORD,
@@ -28,19 +34,106 @@ public class Lexer {
         DELIMITER,
         STRING,
         INVALID,
-        ODF
+        ODF,
+        TEMPLATE,
+        REGEX
     }
-    //token class
-    public class Token {
+    // fine-grained token kinds: one per keyword, operator and delimiter, so the parser can
+    // switch on a token instead of comparing its value
+    public enum TokenKind {
+        IDENTIFIER, PERSONAL_KEYWORD, NUMBER, STRING, INVALID, EOF, REGEX,
+        // template literal pieces: `...` without substitutions, or `...${ then }...${ then }...`
+        TEMPLATE, TEMPLATE_HEAD, TEMPLATE_MIDDLE, TEMPLATE_TAIL,
+
+        KW_DO("do"), KW_WHILE("while"), KW_IF("if"), KW_ELSE("else"), KW_FOR("for"), KW_SWITCH("switch"),
+        KW_CASE("case"), KW_BREAK("break"), KW_CONTINUE("continue"), KW_VAR("var"), KW_LET("let"),
+        KW_CONST("const"), KW_RETURN("return"), KW_TRUE("true"), KW_FALSE("false"), KW_NULL("null"),
+        KW_UNDEFINED("undefined"), KW_TRY("try"), KW_CATCH("catch"), KW_FINALLY("finally"), KW_THROW("throw"),
+        KW_NEW("new"), KW_CLASS("class"), KW_EXTENDS("extends"), KW_SUPER("super"), KW_THIS("this"),
+        KW_IMPORT("import"), KW_EXPORT("export"), KW_FROM("from"), KW_AS("as"), KW_IN("in"), KW_OF("of"),
+        KW_INSTANCEOF("instanceof"), KW_CONSOLE("console"), KW_LOG("log"), KW_TYPEOF("typeof"), KW_VOID("void"),
+        KW_DELETE("delete"), KW_WITH("with"), KW_STATIC("static"), KW_GET("get"), KW_SET("set"),
+        KW_ASYNC("async"), KW_DEFAULT("default"), KW_DEBUGGER("debugger"), KW_ENUM("enum"),
+        KW_IMPLEMENTS("implements"), KW_INTERFACE("interface"), KW_PACKAGE("package"), KW_PRIVATE("private"),
+        KW_PROTECTED("protected"), KW_PUBLIC("public"), KW_BOOLEAN("boolean"), KW_NUMBER("number"),
+        KW_STRING("string"), KW_SYMBOL("symbol"), KW_BIGINT("bigint"), KW_YIELD("yield"),
+
+        OP_URSHIFT_ASSIGN(">>>="), OP_SHR_ASSIGN(">>="), OP_SHL_ASSIGN("<<="), OP_POW_ASSIGN("**="),
+        OP_STRICT_NE("!=="), OP_STRICT_EQ("==="), OP_AND("&&"), OP_OR("||"), OP_NULLISH("??"), OP_POW("**"),
+        OP_PLUS_ASSIGN("+="), OP_MINUS_ASSIGN("-="), OP_STAR_ASSIGN("*="), OP_SLASH_ASSIGN("/="),
+        OP_PERCENT_ASSIGN("%="), OP_BITAND_ASSIGN("&="), OP_BITOR_ASSIGN("|="), OP_XOR_ASSIGN("^="),
+        OP_SHR(">>"), OP_SHL("<<"), OP_LE("<="), OP_GE(">="), OP_EQ("=="), OP_NE("!="), OP_ARROW("=>"),
+        OP_QUESTION("?"), OP_COLON(":"), OP_PLUS("+"), OP_MINUS("-"), OP_STAR("*"), OP_SLASH("/"),
+        OP_PERCENT("%"), OP_ASSIGN("="), OP_BITAND("&"), OP_BITOR("|"), OP_XOR("^"), OP_TILDE("~"),
+        OP_NOT("!"), OP_OPTIONAL_CHAIN("?."), OP_INC("++"), OP_DEC("--"), OP_LT("<"), OP_GT(">"),
+
+        COMMA(","), SEMI(";"), LPAREN("("), RPAREN(")"), LBRACE("{"), RBRACE("}"),
+        LBRACKET("["), RBRACKET("]"), DOT(".");
+
+        private static final java.util.Map<String, TokenKind> BY_SPELLING = new java.util.HashMap<>();
+        static {
+            for (TokenKind k : values()) {
+                if (k.spelling != null) BY_SPELLING.put(k.spelling, k);
+            }
+        }
+
+        public final String spelling; // null for kinds that cover many lexemes
+
+        TokenKind() {
+            this(null);
+        }
+
+        TokenKind(String spelling) {
+            this.spelling = spelling;
+        }
+
+        public static TokenKind of(TokenType type, String value) {
+            switch (type) {
+                case IDENTIFIER: return IDENTIFIER;
+                case PERSONAL_KEYWORD: return PERSONAL_KEYWORD;
+                case NUMBER: return NUMBER;
+                case STRING: return STRING;
+                case ODF: return EOF;
+                case INVALID: return INVALID;
+                case REGEX: return REGEX;
+                case TEMPLATE:
+                    boolean head = value.startsWith("`");
+                    boolean open = value.endsWith("${");
+                    if (head) return open ? TEMPLATE_HEAD : TEMPLATE;
+                    return open ? TEMPLATE_MIDDLE : TEMPLATE_TAIL;
+                default:
+                    TokenKind k = BY_SPELLING.get(value);
+                    return k != null ? k : INVALID;
+            }
+        }
+    }
+    //token class (static so cached or decoded tokens can be rebuilt without a Lexer)
+    public static class Token {
         public final TokenType type;
+        public final TokenKind kind;
         public final String value;
         public final int line;
+        public final int offset; // index of the first char in the source, -1 when unknown
+        public final double numberValue; // parsed value of a NUMBER token, NaN for every other type
+        public final java.math.BigInteger bigIntValue; // exact value of a BigInt literal, null otherwise
 
         // Token constructor
         public Token(TokenType type, String value, int line) {
+            this(type, value, line, -1);
+        }
+
+        public Token(TokenType type, String value, int line, int offset) {
+            this(type, TokenKind.of(type, value), value, line, offset);
+        }
+
+        public Token(TokenType type, TokenKind kind, String value, int line, int offset) {
             this.type = type;
+            this.kind = kind;
             this.value = value;
             this.line = line;
+            this.offset = offset;
+            this.numberValue = type == TokenType.NUMBER ? Lexer.numberValue(value) : Double.NaN;
+            this.bigIntValue = type == TokenType.NUMBER ? Lexer.bigIntValue(value) : null;
         }
         // Token toString method
         @Override
@@ -53,6 +146,15 @@ public class Lexer {
     // lists to store tokens and errors
     private final List<Token> tokens = new ArrayList<>();
     private final List<String> errors = new ArrayList<>();
+    // lexemes are shared through this table instead of being allocated per token
+    private final LexemeInterner interner;
+    // lexing stops once more than maxTokens tokens are found, or when 'cancelled' says so
+    private final int maxTokens;
+    private final BooleanSupplier cancelled;
+    private boolean truncated;
+    private boolean stopped;
+    private static final BooleanSupplier NEVER = () -> false;
+    private static final int CANCEL_CHECK_INTERVAL = 1024; // main loop iterations, a power of two
     public final List<Token> keywords = new ArrayList<>();
     public final List<Token> personalKeywords = new ArrayList<>();
     public final List<Token> identifiers = new ArrayList<>();
@@ -65,12 +167,11 @@ public class Lexer {
     //instead of using built-in string comparison, I implemented my own
     //it compares two strings character by character and returns true if they are the same, false otherwise
     private boolean sameString(String a, String b) {
-        String a2 = a + '\0';
-        String b2 = b + '\0';
         int i = 0;
         while (true) {
-            char ca = a2.charAt(i);
-            char cb = b2.charAt(i);
+            // past the end reads as the '\0' end marker
+            char ca = i < a.length() ? a.charAt(i) : '\0';
+            char cb = i < b.length() ? b.charAt(i) : '\0';
 
 
             if (ca == '\0' && cb == '\0') return true;
@@ -112,18 +213,19 @@ public class Lexer {
     }
 
     // identifier Deterministic Finite Automaton
+    private static final int[][] IDENTIFIER_DFA = {
+            {1, -1, -1},
+            {1, 1, -1}
+    };
+
     private boolean isIdentifier(String s) {
-        int[][] MAT = {
-                {1, -1, -1},
-                {1, 1, -1}
-        };
+        int[][] MAT = IDENTIFIER_DFA;
 
         int state = 0;
         int i = 0;
-        s = s + '\0';
 
         while (true) {
-            char c = s.charAt(i);
+            char c = i < s.length() ? s.charAt(i) : '\0';
 
 
             if (c == '\0') return state == 1;
@@ -135,37 +237,249 @@ public class Lexer {
             i++;
         }
     }
-    // number Deterministic Finite Automaton
-    private int indexCharForNumber(char c) {
-        if (c >= '0' && c <= '9') return 0;
-        else if (c == '.') return 1;
-        else return 2;
+    // number Deterministic Finite Automaton, covering every ECMAScript numeric literal:
+    // decimals with '.', exponents and '_' separators, 0x/0o/0b prefixes, legacy 017 octals
+    // and the BigInt 'n' suffix
+    private static int indexCharForNumber(char c) {
+        if (c == '0') return 0;
+        else if (c == '1') return 1;
+        else if (c >= '2' && c <= '7') return 2;
+        else if (c == '8' || c == '9') return 3;
+        else if (c == '.') return 4;
+        else if (c == 'e' || c == 'E') return 5;
+        else if (c == '+' || c == '-') return 6;
+        else if (c == '_') return 7;
+        else if (c == 'x' || c == 'X') return 8;
+        else if (c == 'o' || c == 'O') return 9;
+        else if (c == 'b' || c == 'B') return 10;
+        else if (c == 'n') return 11;
+        else if ((c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F')) return 12; // remaining hex digits
+        else return 13;
+    }
+
+    // A leading '.' needs a digit after it (.5), so it does not accept alone.
+    // A legacy octal literal (017) takes no fraction, exponent or separator; a digit 8 or 9
+    // makes it a non-octal decimal (018, 09.5), which may have a fraction and an exponent
+    // columns:       0   1  2-7 8-9  .   e  +-   _   x   o   b   n  hex other
+    private static final int[][] NUMBER_DFA = {
+            /*  0 start      */ { 1,  3,  3,  3, 23, -1, -1, -1, -1, -1, -1, -1, -1, -1},
+            /*  1 0          */ { 2,  2,  2, 22,  5,  8, -1, -1, 12, 15, 18, 21, -1, -1},
+            /*  2 legacy 017 */ { 2,  2,  2, 22, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1},
+            /*  3 integer    */ { 3,  3,  3,  3,  5,  8, -1,  4, -1, -1, -1, 21, -1, -1},
+            /*  4 integer _  */ { 3,  3,  3,  3, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1},
+            /*  5 1.         */ { 6,  6,  6,  6, -1,  8, -1, -1, -1, -1, -1, -1, -1, -1},
+            /*  6 fraction   */ { 6,  6,  6,  6, -1,  8, -1,  7, -1, -1, -1, -1, -1, -1},
+            /*  7 fraction _ */ { 6,  6,  6,  6, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1},
+            /*  8 e          */ {10, 10, 10, 10, -1, -1,  9, -1, -1, -1, -1, -1, -1, -1},
+            /*  9 e+         */ {10, 10, 10, 10, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1},
+            /* 10 exponent   */ {10, 10, 10, 10, -1, -1, -1, 11, -1, -1, -1, -1, -1, -1},
+            /* 11 exponent _ */ {10, 10, 10, 10, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1},
+            /* 12 0x         */ {13, 13, 13, 13, -1, 13, -1, -1, -1, -1, 13, -1, 13, -1},
+            /* 13 hex        */ {13, 13, 13, 13, -1, 13, -1, 14, -1, -1, 13, 21, 13, -1},
+            /* 14 hex _      */ {13, 13, 13, 13, -1, 13, -1, -1, -1, -1, 13, -1, 13, -1},
+            /* 15 0o         */ {16, 16, 16, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1},
+            /* 16 octal      */ {16, 16, 16, -1, -1, -1, -1, 17, -1, -1, -1, 21, -1, -1},
+            /* 17 octal _    */ {16, 16, 16, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1},
+            /* 18 0b         */ {19, 19, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1},
+            /* 19 binary     */ {19, 19, -1, -1, -1, -1, -1, 20, -1, -1, -1, 21, -1, -1},
+            /* 20 binary _   */ {19, 19, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1},
+            /* 21 BigInt n   */ {-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1},
+            /* 22 decimal 08 */ {22, 22, 22, 22,  5,  8, -1, -1, -1, -1, -1, -1, -1, -1},
+            /* 23 .          */ { 6,  6,  6,  6, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1}
+    };
+    private static final boolean[] NUMBER_ACCEPTS = {
+            false, true, true, true, false, true, true, false, false, false, true,
+            false, false, true, false, false, true, false, false, true, false, true, true, false
+    };
+
+    // end of the longest numeric literal starting at 'start' (maximal munch), or 'start' if
+    // there is none; the scan stops at the '\0' sentinel like every other one
+    private static int numberEnd(String code, int start) {
+        int state = 0;
+        int lastAccept = start;
+        int j = start;
+        while (true) {
+            state = NUMBER_DFA[state][indexCharForNumber(code.charAt(j))];
+            if (state < 0) return lastAccept;
+            j++;
+            if (NUMBER_ACCEPTS[state]) lastAccept = j;
+        }
     }
+
     //DFA
     private boolean isNumber(String s) {
-        int[][] MAT = {
-                {1, -1, -1},
-                {1, 2, -1},
-                {2, -1, -1}
-        };
+        return !s.isEmpty() && numberEnd(s + '\0', 0) == s.length();
+    }
 
-        int state = 0;
-        int i = 0;
-        s = s + '\0';
+    // value of a numeric lexeme, NaN if it is not one; BigInt literals are rounded to the
+    // nearest double, their exact value is bigIntValue
+    static double numberValue(String s) {
+        if (s.endsWith("n")) {
+            java.math.BigInteger exact = bigIntValue(s);
+            return exact != null ? exact.doubleValue() : Double.NaN;
+        }
+        String digits = s.indexOf('_') >= 0 ? s.replace("_", "") : s;
+        try {
+            int radix = 10;
+            String body = digits;
+            if (digits.length() > 2 && digits.charAt(0) == '0') {
+                char prefix = digits.charAt(1);
+                if (prefix == 'x' || prefix == 'X') radix = 16;
+                else if (prefix == 'o' || prefix == 'O') radix = 8;
+                else if (prefix == 'b' || prefix == 'B') radix = 2;
+                if (radix != 10) body = digits.substring(2);
+            }
+            if (radix == 10 && isLegacyOctal(digits)) radix = 8;
+            if (radix == 10) return Double.parseDouble(digits);
+            return body.length() <= 15 ? Long.parseLong(body, radix) : new java.math.BigInteger(body, radix).doubleValue();
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    // exact value of a BigInt lexeme (123n, 0xFFn), null if it is not one
+    static java.math.BigInteger bigIntValue(String s) {
+        if (!s.endsWith("n")) return null;
+        String digits = s.substring(0, s.length() - 1);
+        if (digits.indexOf('_') >= 0) digits = digits.replace("_", "");
+        int radix = 10;
+        if (digits.length() > 2 && digits.charAt(0) == '0') {
+            char prefix = digits.charAt(1);
+            if (prefix == 'x' || prefix == 'X') radix = 16;
+            else if (prefix == 'o' || prefix == 'O') radix = 8;
+            else if (prefix == 'b' || prefix == 'B') radix = 2;
+            if (radix != 10) digits = digits.substring(2);
+        }
+        try {
+            return new java.math.BigInteger(digits, radix);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // 017 is octal, 018 is decimal
+    private static boolean isLegacyOctal(String digits) {
+        if (digits.length() < 2 || digits.charAt(0) != '0') return false;
+        for (int k = 1; k < digits.length(); k++) {
+            char ch = digits.charAt(k);
+            if (ch < '0' || ch > '7') return false;
+        }
+        return true;
+    }
+
+    // same as Character.isWhitespace, with the common ASCII cases decided first
+    private static boolean isSpace(char c) {
+        if (c == ' ' || c == '\n' || c == '\t' || c == '\r') return true;
+        if (c < 0x80 && c > ' ') return false;
+        return Character.isWhitespace(c);
+    }
 
+    // end of the template chunk whose body starts at 'from': just past the closing '`' or the
+    // next "${", or -1 if the input ends first. Every char is looked at once, so even a long
+    // unterminated template costs a single pass
+    private static int templateChunkEnd(String code, int from) {
+        int j = from;
         while (true) {
-            char c = s.charAt(i);
+            char ch = code.charAt(j);
+            if (ch == '\0') return -1;
+            j++;
+            if (ch == '`') return j;
+            if (ch == '$' && code.charAt(j) == '{') return j + 1;
+            if (ch == '\\' && code.charAt(j) != '\0') j++;
+        }
+    }
 
-            // Stop at the added space
-            if (c == '\0') return state == 1 || state == 2;
+    // end of the regular expression literal starting at 'start' (its '/'), flags included,
+    // or -1 if the line ends before the closing '/' (a '/' inside [...] does not close it)
+    private int regexEnd(String code, int start) {
+        int j = start + 1;
+        boolean inClass = false;
+        while (true) {
+            char ch = code.charAt(j);
+            if (ch == '\0' || ch == '\n' || ch == '\r') return -1;
+            j++;
+            if (ch == '\\') {
+                char next = code.charAt(j);
+                if (next == '\0' || next == '\n' || next == '\r') return -1;
+                j++;
+            } else if (ch == '[') {
+                inClass = true;
+            } else if (ch == ']') {
+                inClass = false;
+            } else if (ch == '/' && !inClass) {
+                break;
+            }
+        }
+        while (indexCharForIdentifier(code.charAt(j)) != 2) j++; // flags
+        return j;
+    }
 
-            int col = indexCharForNumber(c);
+    // regex or division: a '/' starts a regular expression wherever an operand is expected,
+    // which the previous token decides. Many ordinary names (log, number, get, of, ...) are
+    // keywords in this lexer, so a keyword only allows a regex when it takes an operand after it
+    private boolean regexAllowed() {
+        if (tokens.isEmpty()) return true;
+        Token prev = tokens.get(tokens.size() - 1);
+        switch (prev.type) {
+            case OPERATOR:
+                return prev.kind != TokenKind.OP_INC && prev.kind != TokenKind.OP_DEC;
+            case DELIMITER:
+                return prev.kind != TokenKind.RPAREN && prev.kind != TokenKind.RBRACKET;
+            case TEMPLATE:
+                return prev.kind == TokenKind.TEMPLATE_HEAD || prev.kind == TokenKind.TEMPLATE_MIDDLE;
+            case KEYWORD:
+                switch (prev.kind) {
+                    case KW_RETURN: case KW_TYPEOF: case KW_INSTANCEOF: case KW_IN: case KW_OF:
+                    case KW_NEW: case KW_DELETE: case KW_VOID: case KW_THROW: case KW_CASE:
+                    case KW_DO: case KW_ELSE: case KW_YIELD:
+                        return true;
+                    default:
+                        return false;
+                }
+            default:
+                return false;
+        }
+    }
 
-            if (MAT[state][col] == -1) return false;
+    // next '\n' at or after the last position countLines was asked about; tokenize only moves
+    // forward, so each newline is searched for once however many chunks are counted
+    private int nextNewline = -1;
+
+    // number of '\n' in code[from, to)
+    private int countLines(String code, int from, int to) {
+        if (nextNewline < from) nextNewline = indexOfNewline(code, from);
+        int n = 0;
+        while (nextNewline < to) {
+            n++;
+            nextNewline = indexOfNewline(code, nextNewline + 1);
+        }
+        return n;
+    }
 
-            state = MAT[state][col];
-            i++;
+    private static int indexOfNewline(String code, int from) {
+        int nl = code.indexOf('\n', from);
+        return nl < 0 ? Integer.MAX_VALUE : nl;
+    }
+
+    // true where the identifier/number collector stops: end of input, whitespace, a delimiter,
+    // a quote, a comment or an operator (a '.' does not stop a lexeme starting with a digit)
+    private boolean endsLexeme(String code, int j, boolean numeric) {
+        char cc = code.charAt(j);
+        if (cc == '.' && numeric) return false;
+        if (cc == '\0' || Character.isWhitespace(cc) || isDelimiter(cc) || cc == '"' || cc == '\'' || cc == '`' ||
+                (cc == '/' && (code.charAt(j + 1) == '/' || code.charAt(j + 1) == '*'))) {
+            return true;
+        }
+        for (String opWithSentinel : OperatorsWithSentinel) {
+            int k = 0;
+            while (true) {
+                char opChar = opWithSentinel.charAt(k);
+                if (opChar == '\0') return true;
+                if (opChar != code.charAt(j + k)) break;
+                k++;
+            }
         }
+        return false;
     }
 
     private boolean isDelimiter(char c) {
@@ -213,27 +527,72 @@ public class Lexer {
         return errors;
     }
 
+    // true if lexing stopped at the token limit; the tokens end with the first one past it
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    // true if lexing was cancelled before the end of the input
+    public boolean isCancelled() {
+        return stopped;
+    }
+
     // main tokenization function
     private void tokenize(String code) {
         code = code + '\0';
         int i = 0;
         int line = 1;
         int column = 1;
-        List<String> ops = new ArrayList<>(Arrays.asList(Operators));
+        // index of the first char of the current line, so a column can be recomputed after a jump
+        // without searching back for the previous newline
+        int lineStart = 0;
+        // lexing stops at the first '\0' (our sentinel, or an embedded one), so the bulk
+        // scanners below never need to look past it
+        int end = code.indexOf('\0');
+        // once a search for "*/" has failed from some index, it fails from every later one too
+        int noCommentCloseFrom = Integer.MAX_VALUE;
+        // template mode stack: one entry per open "${", holding how many '{' are open inside
+        // that substitution and where its template started
+        int[] templateBraces = new int[8];
+        int[] templateLines = new int[8];
+        int[] templateColumns = new int[8];
+        int templateDepth = 0;
+        int steps = 0;
         do {
+            if (tokens.size() > maxTokens) {
+                truncated = true;
+                break;
+            }
+            if ((++steps & (CANCEL_CHECK_INTERVAL - 1)) == 0 && cancelled.getAsBoolean()) {
+                stopped = true;
+                break;
+            }
 
             char c = code.charAt(i);
             // maintain line and column count
             if (c == '\n') {
                 line++;
                 column = 1;
+                lineStart = i + 1;
             } else {
                 column++;
             }
 
-            // skip whitespace
-            if (Character.isWhitespace(c)) {
+            // skip whitespace: the whole run in one tight loop, keeping line/column as if
+            // each char had gone through the main loop
+            if (isSpace(c)) {
                 i++;
+                char cc = code.charAt(i);
+                while (isSpace(cc)) {
+                    if (cc == '\n') {
+                        line++;
+                        column = 1;
+                        lineStart = i + 1;
+                    } else {
+                        column++;
+                    }
+                    cc = code.charAt(++i);
+                }
                 continue;
             }
 
@@ -243,63 +602,118 @@ public class Lexer {
 
                 //single line
                 if (nxt == '/') {
-                    i += 2;
-                    do{
-                        char cc = code.charAt(i);
-                        if (cc == '\n' || cc == '\0') break;
-                        i++; // skip everything until newline
-                    }while (true);
+                    // skip everything until newline (String.indexOf is a vectorized JVM intrinsic)
+                    int nl = code.indexOf('\n', i + 2);
+                    i = (nl < 0 || nl > end) ? end : nl;
                     continue;
                 }
 
                 // multi-line comment
                 else if (nxt == '*') {
                     int start = i;
-                    int j = i + 2;
-                    int tempLine = line;
-                    boolean closed = false;
-
-                    while (true) {
-                        char cc = code.charAt(j);
-                        if (cc == '\0') break;
-                        if (cc == '\n') tempLine++;
-                        if (cc == '*' && code.charAt(j + 1) == '/') {
-                            i = j + 2;
-                            line = tempLine;
-                            closed = true;
-                            break;
+                    int close = i + 2 >= noCommentCloseFrom ? -1 : code.indexOf("*/", i + 2);
+                    boolean closed = close >= 0 && close < end;
+
+                    if (closed) {
+                        // count the lines inside the comment by jumping from newline to newline
+                        int newlines = countLines(code, i + 2, close);
+                        if (newlines > 0) {
+                            line += newlines;
+                            // the search stops at the comment's last newline
+                            lineStart = code.lastIndexOf('\n', close) + 1;
                         }
-                        j++;
-                    }
-
-                    if (!closed) {
-                        int commentStartIndex = start;
-                        int lastNl = code.lastIndexOf('\n', commentStartIndex - 1);
-                        int commentStartColumn = (lastNl == -1) ? (commentStartIndex + 1) : (commentStartIndex - lastNl);
+                        i = close + 2;
+                    } else {
+                        noCommentCloseFrom = Math.min(noCommentCloseFrom, i + 2);
+                        int commentStartColumn = start - lineStart + 1;
 
                         errors.add(ErrorReporter.reportUnterminatedComment(line, commentStartColumn));
                         i = start + 2;
-                        int lastNewlineBeforeI = code.lastIndexOf('\n', i - 1);
-                        if (lastNewlineBeforeI == -1) {
-                            column = i + 1;
-                        } else {
-                            column = i - lastNewlineBeforeI;
+                        column = i - lineStart + 1;
+                    }
+                    continue;
+                }
+
+                // regular expression literal
+                else if (regexAllowed()) {
+                    int regexEnd = regexEnd(code, i);
+                    if (regexEnd >= 0) {
+                        tokens.add(new Token(TokenType.REGEX, code.substring(i, regexEnd), line, i));
+                        i = regexEnd;
+                    } else {
+                        // resume at the end of the line rather than rescanning the rest of it
+                        errors.add(ErrorReporter.reportUnterminatedRegex(line, column));
+                        while (i < end && code.charAt(i) != '\n' && code.charAt(i) != '\r') i++;
+                    }
+                    continue;
+                }
+            }
+
+            // template literals: a '`' starts one, and a '}' that closes a "${" continues it
+            boolean closesSubstitution = c == '}' && templateDepth > 0 && templateBraces[templateDepth - 1] == 0;
+            if (c == '`' || closesSubstitution) {
+                int chunkStart = i;
+                int chunkLine = line;
+                int chunkEnd = templateChunkEnd(code, i + 1);
+                if (closesSubstitution) templateDepth--;
+                if (chunkEnd < 0) {
+                    if (c == '`') {
+                        errors.add(ErrorReporter.reportUnterminatedTemplate(line, column));
+                    } else {
+                        errors.add(ErrorReporter.reportUnterminatedTemplate(templateLines[templateDepth], templateColumns[templateDepth]));
+                    }
+                    templateDepth = 0;
+                    chunkEnd = end;
+                } else {
+                    tokens.add(new Token(TokenType.TEMPLATE, code.substring(chunkStart, chunkEnd), chunkLine, chunkStart));
+                    if (code.charAt(chunkEnd - 1) == '{') {
+                        if (templateDepth == templateBraces.length) {
+                            templateBraces = Arrays.copyOf(templateBraces, templateDepth * 2);
+                            templateLines = Arrays.copyOf(templateLines, templateDepth * 2);
+                            templateColumns = Arrays.copyOf(templateColumns, templateDepth * 2);
                         }
+                        if (c == '`') {
+                            templateLines[templateDepth] = line;
+                            templateColumns[templateDepth] = column;
+                        }
+                        templateBraces[templateDepth++] = 0;
                     }
+                }
+                int newlines = countLines(code, chunkStart, chunkEnd);
+                if (newlines > 0) {
+                    line += newlines;
+                    // the search stops at the chunk's last newline
+                    lineStart = code.lastIndexOf('\n', chunkEnd - 1) + 1;
+                    column = chunkEnd - lineStart + 1;
+                }
+                i = chunkEnd;
+                continue;
+            }
+
+            // a '.' followed by a digit starts a number (.5, .5e3), not a delimiter
+            if (c == '.') {
+                int numberEnd = numberEnd(code, i);
+                if (numberEnd > i && endsLexeme(code, numberEnd, true)) {
+                    tokens.add(new Token(TokenType.NUMBER, interner.intern(code, i, numberEnd), line, i));
+                    column += numberEnd - i;
+                    i = numberEnd;
                     continue;
                 }
             }
+
             //delimiters
             if (isDelimiter(c)) {
-                tokens.add(new Token(TokenType.DELIMITER, "" + c, line));
+                if (templateDepth > 0 && c == '{') templateBraces[templateDepth - 1]++;
+                if (templateDepth > 0 && c == '}') templateBraces[templateDepth - 1]--;
+                tokens.add(new Token(TokenType.DELIMITER, interner.intern(code, i, i + 1), line, i));
                 i++;
                 continue;
             }
             int bestMatchLen = 0;
             String bestMatchOp = null;
 
-            for (String op : ops) {
-                String opWithSentinel = op + '\0';
+            for (int o = 0; o < Operators.length; o++) {
+                String opWithSentinel = OperatorsWithSentinel[o];
                 int k = 0;
                 while (true) {
                     char opChar = opWithSentinel.charAt(k);
@@ -307,7 +721,7 @@ public class Lexer {
                     if (opChar == '\0') {
                         if (k > bestMatchLen) {
                             bestMatchLen = k;
-                            bestMatchOp = op;
+                            bestMatchOp = Operators[o];
                         }
                         break;
                     }
@@ -317,7 +731,7 @@ public class Lexer {
             }
 
             if (bestMatchLen > 0) {
-                tokens.add(new Token(TokenType.OPERATOR, bestMatchOp, line));
+                tokens.add(new Token(TokenType.OPERATOR, bestMatchOp, line, i));
                 i += bestMatchLen;
                 continue;
             }
@@ -325,92 +739,78 @@ public class Lexer {
             //strings
             if (c == '"' || c == '\'') {
                 char quote = c;
-                StringBuilder sb = new StringBuilder();
-                sb.append(quote);
+                int strStart = i;
                 i++;
                 int strLine = line;
 
+                // scan the body without copying, the lexeme is cut out once at the end
                 boolean closed = false;
                 while (true) {
                     char ch = code.charAt(i);
                     if (ch == '\0' || ch == '\n') break;
-                    sb.append(ch);
                     i++;
                     if (ch == quote) { closed = true; break; }
-                    if (ch == '\\') {
-                        char esc = code.charAt(i);
-                        if (esc != '\0') { sb.append(esc); i++; }
+                    if (ch == '\\' && code.charAt(i) != '\0') {
+                        // an escaped newline continues the string on the same line number, but
+                        // columns count from it
+                        if (code.charAt(i) == '\n') lineStart = i + 1;
+                        i++;
                     }
                 }
+                String lexeme = closed ? interner.intern(code, strStart, i) : code.substring(strStart, i);
 
                 if (closed) {
-                    tokens.add(new Token(TokenType.STRING, sb.toString(), strLine));
+                    tokens.add(new Token(TokenType.STRING, lexeme, strLine, strStart));
                 } else {
-                    errors.add(ErrorReporter.reportUnterminatedString(strLine, column, sb.toString()));
-                    if (code.charAt(i) == '\n') { line++; i++; }
+                    errors.add(ErrorReporter.reportUnterminatedString(strLine, column, lexeme));
+                    if (code.charAt(i) == '\n') { line++; i++; lineStart = i; }
                     else if (code.charAt(i) == '\0') { }
                 }
                 continue;
             }
             // identifiers, numbers, and invalid tokens
-            StringBuilder tokenBuilder = new StringBuilder();
             int tokenStartLine = line;
             int tokenStartColumn = column;
+            int tokenStartOffset = i;
             boolean hasChar = false;
             char tokenFirstChar = code.charAt(i);
 
-            do {
-                char cc = code.charAt(i);
-                boolean isDotAllowedInNumber = (tokenFirstChar >= '0' && tokenFirstChar <= '9') && (cc == '.');
-
-                boolean stop =
-                        cc == '\0' ||
-                                Character.isWhitespace(cc) ||
-                                (isDelimiter(cc) && !isDotAllowedInNumber) ||
-                                cc == '"' || cc == '\'' || cc == '`' ||
-                                (cc == '/' && (code.charAt(i + 1) == '/' || code.charAt(i + 1) == '*'));
-
-                if (stop) break;
-
-
-                boolean opHere = false;
-                for (String op : ops) {
-                    String opWithSentinel = op + '\0';
-                    int k = 0;
-                    while (true) {
-                        char opChar = opWithSentinel.charAt(k);
-                        char codeChar = code.charAt(i + k);
-                        if (opChar == '\0') { opHere = true; break; }
-                        if (opChar != codeChar) break;
-                        k++;
-                    }
-                    if (tokenFirstChar >= '0' && tokenFirstChar <= '9' && sameString(op, ".")) {
-                        opHere = false;
-                    }
-                    if (opHere) break;
+            boolean numeric = tokenFirstChar >= '0' && tokenFirstChar <= '9';
+
+            // numeric literals: the longest match of the number DFA, when it ends the lexeme
+            if (numeric) {
+                int numberEnd = numberEnd(code, i);
+                if (numberEnd > i && endsLexeme(code, numberEnd, true)) {
+                    tokens.add(new Token(TokenType.NUMBER, interner.intern(code, i, numberEnd), line, i));
+                    column += numberEnd - i;
+                    i = numberEnd;
+                    continue;
                 }
-                if (opHere) break;
+            }
+
+            // the lexeme is code[tokenStartOffset, i), looked up in the interner once it ends
+            do {
+                if (endsLexeme(code, i, numeric)) break;
 
-                tokenBuilder.append(cc);
                 i++;
                 column++;
                 hasChar = true;
             } while (true);
 
             if (hasChar) {
-                String tokenStr = tokenBuilder.toString();
+                String tokenStr = interner.intern(code, tokenStartOffset, i);
 
                 char first = tokenStr.charAt(0);
                 if (first >= '0' && first <= '9') {
                     if (isNumber(tokenStr)) {
-                        tokens.add(new Token(TokenType.NUMBER, tokenStr, tokenStartLine));
+                        tokens.add(new Token(TokenType.NUMBER, tokenStr, tokenStartLine, tokenStartOffset));
                     } else {
                         errors.add(ErrorReporter.reportInvalidToken(tokenStartLine, tokenStartColumn, tokenStr));
                     }
                 } else if ((first >= 'A' && first <= 'Z') || (first >= 'a' && first <= 'z') || first == '_' || first == '$') {
-                    if (isKeyword(tokenStr)) tokens.add(new Token(TokenType.KEYWORD, tokenStr, tokenStartLine));
-                    else if (isPersonalKeyword(tokenStr)) tokens.add(new Token(TokenType.PERSONAL_KEYWORD, tokenStr, tokenStartLine));
-                    else if (isIdentifier(tokenStr)) tokens.add(new Token(TokenType.IDENTIFIER, tokenStr, tokenStartLine));
+                    if (isKeyword(tokenStr)) tokens.add(new Token(TokenType.KEYWORD, tokenStr, tokenStartLine, tokenStartOffset));
+                    else if (isPersonalKeyword(tokenStr)) tokens.add(new Token(TokenType.PERSONAL_KEYWORD, tokenStr, tokenStartLine, tokenStartOffset));
+                    else if (isIdentifier(tokenStr)) tokens.add(new Token(TokenType.IDENTIFIER, tokenStr, tokenStartLine, tokenStartOffset));
                     else {
                         // Unknown identifier-like lexeme: report and emit INVALID token
                         errors.add(ErrorReporter.reportInvalidToken(tokenStartLine, tokenStartColumn, tokenStr));
@@ -428,11 +828,29 @@ public class Lexer {
 
         } while (code.charAt(i) != '\0');
 
+        // a "${" still open at the end leaves its whole template unterminated
+        if (templateDepth > 0 && !truncated && !stopped) {
+            errors.add(ErrorReporter.reportUnterminatedTemplate(templateLines[0], templateColumns[0]));
+        }
 
-        tokens.add(new Token(TokenType.ODF, "\0", line));
+        tokens.add(new Token(TokenType.ODF, "\0", line, i));
     }
 
     public Lexer(String code, List<String> errors) {
+        this(code, errors, LexemeInterner.SHARED);
+    }
+
+    // lex with a given intern table, e.g. one private to a tenant
+    public Lexer(String code, List<String> errors, LexemeInterner interner) {
+        this(code, errors, interner, Integer.MAX_VALUE, NEVER);
+    }
+
+    // lex at most maxTokens + 1 tokens, giving up early once 'cancelled' returns true; it is
+    // polled every CANCEL_CHECK_INTERVAL tokens or whitespace runs, e.g. to enforce a deadline
+    public Lexer(String code, List<String> errors, LexemeInterner interner, int maxTokens, BooleanSupplier cancelled) {
+        this.interner = interner;
+        this.maxTokens = maxTokens;
+        this.cancelled = cancelled;
         tokenize(code);
         if (errors != null) {
             errors.addAll(this.errors);
@@ -0,0 +1,429 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+// Language Server Protocol mode over stdin/stdout.
+// Supports incremental text sync, publishes Lexer + Parser diagnostics and serves
+// semantic tokens from the TokenType classification.
+// usage: java -jar B3_Rezouali_Imane.jar --lsp
+public class LspServer {
+    // semantic token legend, indexes match tokenTypeIndex()
+    private static final List<String> TOKEN_TYPES = Arrays.asList("keyword", "macro", "variable", "number", "string", "operator", "regexp");
+
+    private static final int METHOD_NOT_FOUND = -32601;
+    private static final int INVALID_PARAMS = -32602;
+    private static final int REQUEST_CANCELLED = -32800;
+
+    private final InputStream in;
+    private final OutputStream out;
+    private final ExecutorService workers;
+    private final Map<String, Document> documents = new ConcurrentHashMap<>();
+    private final Map<Object, Future<?>> pendingRequests = new ConcurrentHashMap<>();
+    private boolean shutdownRequested = false;
+
+    // one open editor buffer; text and version are guarded by the document itself
+    private static final class Document {
+        final StringBuilder text;
+        int version;
+        boolean closed;
+        Future<?> analysis;
+
+        Document(String text, int version) {
+            this.text = new StringBuilder(text);
+            this.version = version;
+        }
+    }
+
+    public LspServer(InputStream in, OutputStream out) {
+        this.in = new BufferedInputStream(in);
+        this.out = new BufferedOutputStream(out);
+        this.workers = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+            Thread t = new Thread(r, "lsp-worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static int run() {
+        return new LspServer(System.in, System.out).serve();
+    }
+
+    // reads messages until 'exit' or end of input, returns the process exit code
+    public int serve() {
+        try {
+            String message;
+            while ((message = readMessage()) != null) {
+                Map<String, Object> msg;
+                try {
+                    msg = asMap(Json.parse(message));
+                } catch (IllegalArgumentException e) {
+                    continue; // not valid JSON-RPC, nothing to answer
+                }
+                if (msg == null) continue;
+                if ("exit".equals(msg.get("method"))) {
+                    return shutdownRequested ? 0 : 1;
+                }
+                dispatch(msg);
+            }
+            return 1;
+        } catch (IOException e) {
+            return 1;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void dispatch(Map<String, Object> msg) throws IOException {
+        Object method = msg.get("method");
+        Object id = msg.get("id");
+        Map<String, Object> params = asMap(msg.get("params"));
+        if (!(method instanceof String)) return; // a response from the client, we never send requests
+
+        switch ((String) method) {
+            case "initialize":
+                respond(id, initializeResult());
+                break;
+            case "initialized":
+                break;
+            case "shutdown":
+                shutdownRequested = true;
+                respond(id, null);
+                break;
+            case "textDocument/didOpen":
+                didOpen(params);
+                break;
+            case "textDocument/didChange":
+                didChange(params);
+                break;
+            case "textDocument/didClose":
+                didClose(params);
+                break;
+            case "textDocument/semanticTokens/full":
+                semanticTokens(id, params);
+                break;
+            case "$/cancelRequest":
+                cancelRequest(params);
+                break;
+            default:
+                // unknown notifications are ignored, unknown requests get an error
+                if (id != null) respondError(id, METHOD_NOT_FOUND, "Method not found: " + method);
+        }
+    }
+
+    private Map<String, Object> initializeResult() {
+        Map<String, Object> sync = obj("openClose", true, "change", 2); // 2 = incremental
+        Map<String, Object> legend = obj("tokenTypes", TOKEN_TYPES, "tokenModifiers", new ArrayList<>());
+        Map<String, Object> capabilities = obj(
+                "textDocumentSync", sync,
+                "semanticTokensProvider", obj("legend", legend, "full", true));
+        return obj("capabilities", capabilities, "serverInfo", obj("name", "Mini JS IDE"));
+    }
+
+    // ---------------- text synchronization ----------------
+
+    private void didOpen(Map<String, Object> params) {
+        Map<String, Object> td = asMap(params != null ? params.get("textDocument") : null);
+        if (td == null || !(td.get("uri") instanceof String)) return;
+        String uri = (String) td.get("uri");
+        String text = td.get("text") instanceof String ? (String) td.get("text") : "";
+        Document doc = new Document(text, asInt(td.get("version"), 0));
+        Document previous = documents.put(uri, doc);
+        if (previous != null) close(previous);
+        scheduleAnalysis(uri, doc);
+    }
+
+    private void didChange(Map<String, Object> params) {
+        Map<String, Object> td = asMap(params != null ? params.get("textDocument") : null);
+        if (td == null) return;
+        Document doc = documents.get(td.get("uri"));
+        if (doc == null || !(params.get("contentChanges") instanceof List)) return;
+
+        // changes are applied on the reader thread, in order, before the analysis is rescheduled
+        synchronized (doc) {
+            for (Object c : (List<?>) params.get("contentChanges")) {
+                Map<String, Object> change = asMap(c);
+                if (change == null || !(change.get("text") instanceof String)) continue;
+                String text = (String) change.get("text");
+                Map<String, Object> range = asMap(change.get("range"));
+                if (range == null) {
+                    doc.text.setLength(0);
+                    doc.text.append(text);
+                } else {
+                    int start = offsetOf(doc.text, asMap(range.get("start")));
+                    int end = offsetOf(doc.text, asMap(range.get("end")));
+                    doc.text.replace(start, Math.max(start, end), text);
+                }
+            }
+            doc.version = asInt(td.get("version"), doc.version + 1);
+        }
+        scheduleAnalysis((String) td.get("uri"), doc);
+    }
+
+    private void didClose(Map<String, Object> params) throws IOException {
+        Map<String, Object> td = asMap(params != null ? params.get("textDocument") : null);
+        if (td == null) return;
+        Document doc = documents.remove(td.get("uri"));
+        if (doc == null) return;
+        close(doc);
+        notify("textDocument/publishDiagnostics", obj("uri", td.get("uri"), "diagnostics", new ArrayList<>()));
+    }
+
+    private void close(Document doc) {
+        synchronized (doc) {
+            doc.closed = true;
+            if (doc.analysis != null) doc.analysis.cancel(true);
+        }
+    }
+
+    // LSP position (0-based line, UTF-16 character) to an offset into the text
+    private static int offsetOf(CharSequence text, Map<String, Object> position) {
+        if (position == null) return text.length();
+        int line = asInt(position.get("line"), 0);
+        int character = asInt(position.get("character"), 0);
+        int offset = 0;
+        while (line > 0 && offset < text.length()) {
+            if (text.charAt(offset++) == '\n') line--;
+        }
+        int lineEnd = offset;
+        while (lineEnd < text.length() && text.charAt(lineEnd) != '\n') lineEnd++;
+        return Math.min(offset + Math.max(0, character), lineEnd);
+    }
+
+    // ---------------- diagnostics ----------------
+
+    // an analysis for an older version is cancelled as soon as a newer one is scheduled
+    private void scheduleAnalysis(String uri, Document doc) {
+        synchronized (doc) {
+            if (doc.closed) return;
+            if (doc.analysis != null) doc.analysis.cancel(true);
+            String text = doc.text.toString();
+            int version = doc.version;
+            doc.analysis = workers.submit(() -> analyze(uri, doc, text, version));
+        }
+    }
+
+    private void analyze(String uri, Document doc, String text, int version) {
+        // a cancelled analysis stops lexing at the next check and never parses
+        List<String> lexicalErrors = new ArrayList<>();
+        List<String> syntaxErrors = new ArrayList<>();
+        Lexer lexer = new Lexer(text, lexicalErrors, LexemeInterner.SHARED, Integer.MAX_VALUE, Thread.currentThread()::isInterrupted);
+        if (lexer.isCancelled() || Thread.currentThread().isInterrupted()) return;
+        new Parser(lexer, syntaxErrors).Program();
+        CompilationResult result = new CompilationResult(lexer.getTokens(), lexicalErrors, syntaxErrors);
+        int[] lineStarts = lineStarts(text);
+        List<Object> diagnostics = new ArrayList<>();
+        for (String e : result.lexicalErrors) diagnostics.add(diagnostic(e, text, lineStarts, "lexer"));
+        for (String e : result.syntaxErrors) diagnostics.add(diagnostic(e, text, lineStarts, "parser"));
+
+        // publish under the document lock so a superseded analysis can never overwrite a newer one
+        synchronized (doc) {
+            if (doc.closed || doc.version != version || Thread.currentThread().isInterrupted()) return;
+            try {
+                notify("textDocument/publishDiagnostics", obj("uri", uri, "version", version, "diagnostics", diagnostics));
+            } catch (IOException ignored) {
+                // the client went away, the reader loop will notice
+            }
+        }
+    }
+
+    private static Map<String, Object> diagnostic(String error, String text, int[] lineStarts, String source) {
+        int line = Math.max(0, Math.min(ErrorReporter.lineOf(error) - 1, lineStarts.length - 1));
+        int lineStart = lineStarts[line];
+        int lineEnd = line + 1 < lineStarts.length ? lineStarts[line + 1] - 1 : text.length();
+        int startChar = Math.max(0, Math.min(ErrorReporter.columnOf(error) - 1, lineEnd - lineStart));
+        return obj(
+                "range", obj("start", position(line, startChar), "end", position(line, lineEnd - lineStart)),
+                "severity", 1,
+                "source", source,
+                "message", ErrorReporter.messageOf(error));
+    }
+
+    // ---------------- semantic tokens ----------------
+
+    private void semanticTokens(Object id, Map<String, Object> params) throws IOException {
+        Map<String, Object> td = asMap(params != null ? params.get("textDocument") : null);
+        Document doc = td != null ? documents.get(td.get("uri")) : null;
+        if (doc == null) {
+            respondError(id, INVALID_PARAMS, "Unknown document");
+            return;
+        }
+        String text;
+        synchronized (doc) {
+            text = doc.text.toString();
+        }
+        // registered before it runs, so a $/cancelRequest can always find it
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            try {
+                int[] data = encodeSemanticTokens(text);
+                if (data != null && pendingRequests.remove(id) != null) respond(id, obj("data", data));
+            } catch (IOException ignored) {
+            }
+        }, null);
+        pendingRequests.put(id, task);
+        workers.execute(task);
+    }
+
+    // null if the request was cancelled while lexing
+    private static int[] encodeSemanticTokens(String text) {
+        Lexer lexer = new Lexer(text, null, LexemeInterner.SHARED, Integer.MAX_VALUE, Thread.currentThread()::isInterrupted);
+        if (lexer.isCancelled()) return null;
+        int[] lineStarts = lineStarts(text);
+        List<Lexer.Token> tokens = lexer.getTokens();
+        int[] data = new int[tokens.size() * 5];
+        int n = 0;
+        int prevLine = 0;
+        int prevChar = 0;
+        int lineIndex = 0;
+        for (Lexer.Token t : tokens) {
+            int type = tokenTypeIndex(t.type);
+            if (type < 0 || t.offset < 0) continue;
+            // tokens come in source order, so the line cursor only moves forward
+            while (lineIndex + 1 < lineStarts.length && lineStarts[lineIndex + 1] <= t.offset) lineIndex++;
+            int ch = t.offset - lineStarts[lineIndex];
+            data[n++] = lineIndex - prevLine;
+            data[n++] = lineIndex == prevLine ? ch - prevChar : ch;
+            data[n++] = t.value.length();
+            data[n++] = type;
+            data[n++] = 0;
+            prevLine = lineIndex;
+            prevChar = ch;
+        }
+        return Arrays.copyOf(data, n);
+    }
+
+    private static int tokenTypeIndex(Lexer.TokenType type) {
+        switch (type) {
+            case KEYWORD: return 0;
+            case PERSONAL_KEYWORD: return 1;
+            case IDENTIFIER: return 2;
+            case NUMBER: return 3;
+            case STRING:
+            case TEMPLATE: return 4;
+            case OPERATOR: return 5;
+            case REGEX: return 6;
+            default: return -1;
+        }
+    }
+
+    private void cancelRequest(Map<String, Object> params) throws IOException {
+        Object id = params != null ? params.get("id") : null;
+        Future<?> f = id != null ? pendingRequests.remove(id) : null;
+        if (f != null) {
+            f.cancel(true);
+            respondError(id, REQUEST_CANCELLED, "Request cancelled");
+        }
+    }
+
+    // ---------------- helpers ----------------
+
+    private static int[] lineStarts(String text) {
+        int count = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') count++;
+        }
+        int[] starts = new int[count];
+        int line = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') starts[line++] = i + 1;
+        }
+        return starts;
+    }
+
+    private static Map<String, Object> position(int line, int character) {
+        return obj("line", line, "character", character);
+    }
+
+    private static Map<String, Object> obj(Object... keyValues) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            map.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return map;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object o) {
+        return o instanceof Map ? (Map<String, Object>) o : null;
+    }
+
+    private static int asInt(Object o, int fallback) {
+        return o instanceof Number ? ((Number) o).intValue() : fallback;
+    }
+
+    private void respond(Object id, Object result) throws IOException {
+        Map<String, Object> msg = obj("jsonrpc", "2.0", "id", id);
+        msg.put("result", result);
+        send(msg);
+    }
+
+    private void respondError(Object id, int code, String message) throws IOException {
+        send(obj("jsonrpc", "2.0", "id", id, "error", obj("code", code, "message", message)));
+    }
+
+    private void notify(String method, Object params) throws IOException {
+        send(obj("jsonrpc", "2.0", "method", method, "params", params));
+    }
+
+    private void send(Map<String, Object> msg) throws IOException {
+        byte[] body = Json.write(msg).getBytes(StandardCharsets.UTF_8);
+        synchronized (out) {
+            out.write(("Content-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(body);
+            out.flush();
+        }
+    }
+
+    // reads one Content-Length framed message, null at end of input
+    private String readMessage() throws IOException {
+        int length = -1;
+        while (true) {
+            String header = readHeaderLine();
+            if (header == null) return null;
+            if (header.isEmpty()) {
+                if (length >= 0) break;
+                continue;
+            }
+            int colon = header.indexOf(':');
+            if (colon > 0 && header.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                try {
+                    length = Integer.parseInt(header.substring(colon + 1).trim());
+                } catch (NumberFormatException e) {
+                    length = -1;
+                }
+            }
+        }
+        byte[] body = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = in.read(body, read, length - read);
+            if (n < 0) return null;
+            read += n;
+        }
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private String readHeaderLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            int b = in.read();
+            if (b < 0) return line.size() == 0 ? null : line.toString("US-ASCII");
+            if (b == '\n') break;
+            if (b != '\r') line.write(b);
+        }
+        return line.toString("US-ASCII");
+    }
+}
@@ -1,21 +1,98 @@
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 public class Parser {
 
+    // synchronization sets built from the FIRST/FOLLOW sets of the productions
+    private static final EnumSet<Lexer.TokenKind> STATEMENT_END = EnumSet.of(Lexer.TokenKind.SEMI,
+            Lexer.TokenKind.RBRACE, Lexer.TokenKind.EOF);
+    private static final EnumSet<Lexer.TokenKind> FIRST_STATEMENT = EnumSet.of(Lexer.TokenKind.KW_DO,
+            Lexer.TokenKind.KW_VAR, Lexer.TokenKind.KW_LET, Lexer.TokenKind.KW_CONST);
+    private static final EnumSet<Lexer.TokenKind> FIRST_EXPRESSION = EnumSet.of(Lexer.TokenKind.IDENTIFIER, Lexer.TokenKind.NUMBER,
+            Lexer.TokenKind.STRING, Lexer.TokenKind.KW_TRUE, Lexer.TokenKind.KW_FALSE, Lexer.TokenKind.LPAREN,
+            Lexer.TokenKind.TEMPLATE, Lexer.TokenKind.TEMPLATE_HEAD, Lexer.TokenKind.REGEX);
+    // an expression inside a template substitution ends at the next template piece
+    private static final EnumSet<Lexer.TokenKind> FOLLOW_EXPRESSION = union(STATEMENT_END, EnumSet.of(Lexer.TokenKind.RPAREN,
+            Lexer.TokenKind.TEMPLATE_MIDDLE, Lexer.TokenKind.TEMPLATE_TAIL));
+    private static final EnumSet<Lexer.TokenKind> STATEMENT_SYNC = union(STATEMENT_END, FIRST_STATEMENT);
+    private static final EnumSet<Lexer.TokenKind> BLOCK_FOLLOW = union(FIRST_STATEMENT, EnumSet.of(Lexer.TokenKind.RBRACE));
+    private static final EnumSet<Lexer.TokenKind> DO_FOLLOW = union(STATEMENT_END, EnumSet.of(Lexer.TokenKind.LBRACE));
+    private static final EnumSet<Lexer.TokenKind> WHILE_FOLLOW = union(STATEMENT_END,
+            EnumSet.of(Lexer.TokenKind.LPAREN, Lexer.TokenKind.RPAREN));
+    private static final EnumSet<Lexer.TokenKind> FOLLOW_LPAREN = union(FIRST_EXPRESSION, FOLLOW_EXPRESSION);
+
+    private static final EnumSet<Lexer.TokenKind> VALUES = EnumSet.of(Lexer.TokenKind.IDENTIFIER, Lexer.TokenKind.NUMBER,
+            Lexer.TokenKind.STRING, Lexer.TokenKind.KW_TRUE, Lexer.TokenKind.KW_FALSE, Lexer.TokenKind.TEMPLATE,
+            Lexer.TokenKind.REGEX);
+    // arithmetic (+ - * / %) and comparison (== != < > <= >=) operators
+    private static final EnumSet<Lexer.TokenKind> OPERATORS = EnumSet.of(Lexer.TokenKind.OP_PLUS, Lexer.TokenKind.OP_MINUS,
+            Lexer.TokenKind.OP_STAR, Lexer.TokenKind.OP_SLASH, Lexer.TokenKind.OP_PERCENT, Lexer.TokenKind.OP_EQ, Lexer.TokenKind.OP_NE,
+            Lexer.TokenKind.OP_LT, Lexer.TokenKind.OP_GT, Lexer.TokenKind.OP_LE, Lexer.TokenKind.OP_GE);
+
     private final List<Lexer.Token> tokens;
     private final List<String> errors;       // shared list passed from Main
     private final List<String> localErrors;  // accumulate internal errors; merge on failure
     private int index = 0;
     private Lexer.Token current;
+    // panic mode: set by the first error of a statement, further errors are suppressed
+    // until the parser has matched a token again or resynchronized at a statement boundary
+    private boolean panicking = false;
+    // nesting limit for blocks and parenthesized expressions, so hostile input cannot overflow the stack
+    public static final int DEFAULT_MAX_DEPTH = 1000;
+    private int maxDepth = DEFAULT_MAX_DEPTH;
+    private int depth = 0;
+    private boolean depthExceeded = false;
+    // declared names and identifier uses, for resolving references across files in project mode
+    private final List<Lexer.Token> declarations = new ArrayList<>();      // top level only
+    private final List<Lexer.Token> localDeclarations = new ArrayList<>(); // inside blocks
+    private final List<Lexer.Token> references = new ArrayList<>();
 
     public Parser(Lexer lexer, List<String> errors) {
-        this.tokens = lexer.getTokens();
+        this(lexer.getTokens(), errors);
+    }
+
+    // parse an already tokenized stream (e.g. tokens restored from the compilation cache)
+    public Parser(List<Lexer.Token> tokens, List<String> errors) {
+        this.tokens = tokens;
         this.errors = errors;
         this.localErrors = new java.util.ArrayList<>();
         // lexer always appends an ODF token, so tokens should contain at least one element
         this.current = tokens.get(0);
     }
 
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    // identifier tokens of the top-level declarations (exported or not), valid after Program()
+    public List<Lexer.Token> getDeclarations() {
+        return declarations;
+    }
+
+    // identifier tokens of the declarations nested in blocks
+    public List<Lexer.Token> getLocalDeclarations() {
+        return localDeclarations;
+    }
+
+    // identifier tokens used as values or assignment targets
+    public List<Lexer.Token> getReferences() {
+        return references;
+    }
+
+    @SafeVarargs
+    private static EnumSet<Lexer.TokenKind> union(Set<Lexer.TokenKind>... sets) {
+        EnumSet<Lexer.TokenKind> result = EnumSet.noneOf(Lexer.TokenKind.class);
+        for (Set<Lexer.TokenKind> set : sets) result.addAll(set);
+        return result;
+    }
+
+    // kind of the current token, running off the end counts as EOF
+    private Lexer.TokenKind kind() {
+        return current != null ? current.kind : Lexer.TokenKind.EOF;
+    }
+
     private void nextToken() {
         index++;
         if (index < tokens.size()) {
@@ -25,27 +102,66 @@ public class Parser {
         }
     }
 
+    private boolean isAtEnd() {
+        return kind() == Lexer.TokenKind.EOF;
+    }
 
-    private boolean consumeValue(String v) {
-        if (v == null || current == null) return false;
-        if (v.equals(current.value)) {
+    private void report(String error) {
+        if (panicking || depthExceeded) return;
+        panicking = true;
+        localErrors.add(error);
+    }
+
+    // skip tokens until one in the sync set (or EOF); a single forward pass, never rescans
+    private void synchronize(Set<Lexer.TokenKind> syncSet) {
+        while (current != null && current.kind != Lexer.TokenKind.EOF && !syncSet.contains(current.kind)) {
             nextToken();
-            return true;
         }
-        return false;
     }
 
-    private boolean consumeType(Lexer.TokenType type) {
-        if (type == null || current == null) return false;
-        if (current.type == type) {
+    // skip a '{' and everything up to its matching '}' (or EOF), nested braces included
+    private void skipBraces() {
+        int braces = 0;
+        while (current != null && !isAtEnd()) {
+            Lexer.TokenKind k = kind();
+            nextToken();
+            if (k == Lexer.TokenKind.LBRACE) braces++;
+            else if (k == Lexer.TokenKind.RBRACE && --braces == 0) return;
+        }
+    }
+
+    // match a token of the given kind; on a mismatch report once, skip to the expected
+    // token or to anything in the follow set, and consume the expected token if it was found
+    private boolean expect(Lexer.TokenKind expected, int line, String message, Set<Lexer.TokenKind> followSet) {
+        if (kind() == expected) {
             nextToken();
+            panicking = false;
             return true;
         }
+        report(ErrorReporter.reportSyntaxError(line, message));
+        while (current != null && current.kind != Lexer.TokenKind.EOF && current.kind != expected
+                && !followSet.contains(current.kind)) {
+            nextToken();
+        }
+        if (kind() == expected) {
+            nextToken();
+            panicking = false;
+        }
         return false;
     }
 
-    private boolean isAtEnd() {
-        return current == null || current.type == Lexer.TokenType.ODF;
+    // enter one nesting level; past the limit, report once and abandon the rest of the input
+    private boolean enter(int line) {
+        if (depth < maxDepth) {
+            depth++;
+            return true;
+        }
+        if (!depthExceeded) {
+            localErrors.add(ErrorReporter.reportSyntaxError(line, "Nesting deeper than " + maxDepth + " levels"));
+            depthExceeded = true;
+        }
+        while (!isAtEnd()) nextToken();
+        return false;
     }
 
     // Program -> StatementList EOF
@@ -65,23 +181,22 @@ public class Parser {
 
     // StatementList -> Statement*
     public boolean StatementList() {
-        while (!isAtEnd() && !(current != null && "}".equals(current.value))) {
-            int startLine = current != null ? current.line : -1;
+        while (!isAtEnd() && kind() != Lexer.TokenKind.RBRACE) {
+            int startLine = current.line;
             int errorsBefore = localErrors.size();
+            panicking = false;
 
             if (!Statement()) {
                 // If Statement() fails, add generic error if none added
                 if (localErrors.size() == errorsBefore) {
-                    localErrors.add(ErrorReporter.reportSyntaxError(startLine, "Invalid statement"));
+                    report(ErrorReporter.reportSyntaxError(startLine, "Invalid statement"));
                 }
-                // Skip tokens until next semicolon or closing brace
-                while (!isAtEnd() && current != null && !";".equals(current.value) && !"}".equals(current.value)) {
-                    nextToken();
-                }
-                // Consume the semicolon if present
-                if (current != null && ";".equals(current.value)) nextToken();
+                // resynchronize at the end of the statement or the start of the next one
+                synchronize(STATEMENT_SYNC);
+                if (kind() == Lexer.TokenKind.SEMI) nextToken();
             }
         }
+        panicking = false;
         return true;
     }
 
@@ -90,22 +205,35 @@ public class Parser {
     private boolean Statement() {
         if (current == null) return false;
 
-        int startIndex = index; 
+        int startIndex = index;
         boolean ok;
 
-        if (current.type == Lexer.TokenType.KEYWORD && "do".equals(current.value)) {
-            ok = DoWhile();
-        } else if (current.type == Lexer.TokenType.KEYWORD && ("var".equals(current.value) || "let".equals(current.value) || "const".equals(current.value))) {
-            ok = Declaration();
-        } else if (current.type == Lexer.TokenType.IDENTIFIER) {
-            Lexer.Token next = (index + 1 < tokens.size()) ? tokens.get(index + 1) : null;
-            if (next != null && next.type == Lexer.TokenType.OPERATOR && "=".equals(next.value)) {
-                ok = Assignment();
-            } else {
+        switch (kind()) {
+            case KW_DO:
+                ok = DoWhile();
+                break;
+            case KW_VAR:
+            case KW_LET:
+            case KW_CONST:
+                ok = Declaration();
+                break;
+            case KW_EXPORT:
+                // export (var|let|const) ... is a top-level declaration, other exports are skipped
+                Lexer.Token declared = (index + 1 < tokens.size()) ? tokens.get(index + 1) : null;
+                if (declared != null && (declared.kind == Lexer.TokenKind.KW_VAR || declared.kind == Lexer.TokenKind.KW_LET
+                        || declared.kind == Lexer.TokenKind.KW_CONST)) {
+                    nextToken();
+                    ok = Declaration();
+                } else {
+                    ok = OtherStatement();
+                }
+                break;
+            case IDENTIFIER:
+                Lexer.Token next = (index + 1 < tokens.size()) ? tokens.get(index + 1) : null;
+                ok = next != null && next.kind == Lexer.TokenKind.OP_ASSIGN ? Assignment() : OtherStatement();
+                break;
+            default:
                 ok = OtherStatement();
-            }
-        } else {
-            ok = OtherStatement();
         }
         if (!ok && index == startIndex) {
             nextToken();
@@ -119,38 +247,19 @@ public class Parser {
         int line = current != null ? current.line : -1;
         boolean ok = true;
 
-        if (!consumeValue("do")) {
-            localErrors.add(ErrorReporter.reportSyntaxError(line, "Expected 'do'"));
-            ok = false;
-        }
+        if (!expect(Lexer.TokenKind.KW_DO, line, "Expected 'do'", DO_FOLLOW)) ok = false;
 
         if (!Block()) ok = false;
 
-        if (!consumeValue("while")) {
-            localErrors.add(ErrorReporter.reportSyntaxError(line, "Expected 'while'"));
-            ok = false;
-        }
+        if (!expect(Lexer.TokenKind.KW_WHILE, line, "Expected 'while'", WHILE_FOLLOW)) ok = false;
 
-        if (!consumeValue("(")) {
-            localErrors.add(ErrorReporter.reportSyntaxError(line, "Expected '('"));
-            ok = false;
-        }
+        if (!expect(Lexer.TokenKind.LPAREN, line, "Expected '('", FOLLOW_LPAREN)) ok = false;
 
         if (!Expression()) ok = false;
 
-        if (!consumeValue(")")) {
-            localErrors.add(ErrorReporter.reportSyntaxError(line, "Expected ')'"));
-            ok = false;
-        }
+        if (!expect(Lexer.TokenKind.RPAREN, line, "Expected ')'", STATEMENT_END)) ok = false;
 
-        if (!consumeValue(";")) {
-            localErrors.add(ErrorReporter.reportSyntaxError(line, "Expected ';'"));
-            ok = false;
-        }
-        while (!isAtEnd() && current != null && !";".equals(current.value) && !"}".equals(current.value)) {
-            nextToken();
-        }
-        if (current != null && (";".equals(current.value) || "}".equals(current.value))) nextToken();
+        if (!expect(Lexer.TokenKind.SEMI, line, "Expected ';'", STATEMENT_SYNC)) ok = false;
 
         return ok;
     }
@@ -160,31 +269,24 @@ public class Parser {
     // Block -> { StatementList }
     private boolean Block() {
         int line = current != null ? current.line : -1;
+        if (!enter(line)) return false;
         boolean ok = true;
 
-        if (!consumeValue("{")) {
-            localErrors.add(ErrorReporter.reportSyntaxError(line, "Expected '{' at start of block"));
+        if (!expect(Lexer.TokenKind.LBRACE, line, "Expected '{' at start of block", BLOCK_FOLLOW)) {
             ok = false;
-            while (!isAtEnd() && current != null && !"{".equals(current.value) && !"}".equals(current.value)) {
-                nextToken();
-            }
-            if (current != null && "{".equals(current.value)) nextToken();
         }
 
         StatementList();
 
-        if (current != null && "}".equals(current.value)) {
+        // StatementList only stops at '}' or EOF
+        if (kind() == Lexer.TokenKind.RBRACE) {
             nextToken();
         } else {
-            localErrors.add(ErrorReporter.reportSyntaxError(line, "Expected '}' at end of block"));
+            report(ErrorReporter.reportSyntaxError(line, "Expected '}' at end of block"));
             ok = false;
-            // skip until next } to continue parsing
-            while (!isAtEnd() && current != null && !"}".equals(current.value)) {
-                nextToken();
-            }
-            if (current != null && "}".equals(current.value)) nextToken();
         }
 
+        depth--;
         return ok;
     }
 
@@ -194,117 +296,141 @@ public class Parser {
     private boolean Expression() {
         int line = current != null ? current.line : -1;
         if (!Value()) {
-            localErrors.add(ErrorReporter.reportSyntaxError(line, "Expected a valid expression"));
-            while (!isAtEnd() && current != null && !";".equals(current.value) && !"}".equals(current.value)) {
-                nextToken();
-            }
+            report(ErrorReporter.reportSyntaxError(line, "Expected a valid expression"));
+            synchronize(FOLLOW_EXPRESSION);
             return false;
         }
-        while (current != null && current.type == Lexer.TokenType.OPERATOR &&
-                (isComparisonOperator(current.value) || isArithmeticOperator(current.value))) {
+        while (OPERATORS.contains(kind())) {
             nextToken();
             if (!Value()) {
-                localErrors.add(ErrorReporter.reportSyntaxError(line, "Expected value after operator"));
-                while (!isAtEnd() && current != null && !";".equals(current.value) && !"}".equals(current.value)) {
-                    nextToken();
-                }
+                report(ErrorReporter.reportSyntaxError(line, "Expected value after operator"));
+                synchronize(FOLLOW_EXPRESSION);
                 return false;
             }
         }
         return true;
     }
 
-    // Helper to identify arithmetic operators
-    private boolean isArithmeticOperator(String op) {
-        return "+".equals(op) || "-".equals(op) || "*".equals(op) || "/".equals(op) || "%".equals(op);
-    }
-
     private boolean Value() {
         int line = current != null ? current.line : -1;
-        if (current != null) {
-            // Accept identifiers, numbers, strings, AND boolean literals
-            if (current.type == Lexer.TokenType.IDENTIFIER
-                    || current.type == Lexer.TokenType.NUMBER
-                    || current.type == Lexer.TokenType.STRING
-                    || (current.type == Lexer.TokenType.KEYWORD &&
-                    ("true".equals(current.value) || "false".equals(current.value)))) {
+        // Accept identifiers, numbers, strings, boolean, template and regex literals
+        if (VALUES.contains(kind())) {
+            if (kind() == Lexer.TokenKind.IDENTIFIER) references.add(current);
+            nextToken();
+            return true;
+        }
+
+        // Parenthesized expression
+        if (kind() == Lexer.TokenKind.LPAREN) {
+            if (!enter(line)) return false;
+            nextToken();
+            boolean ok = Expression();
+            if (ok && kind() != Lexer.TokenKind.RPAREN) {
+                report(ErrorReporter.reportSyntaxError(line, "Expected ')' after parenthesized expression"));
+                ok = false;
+            } else if (ok) {
                 nextToken();
-                return true;
             }
+            depth--;
+            return ok;
+        }
 
-            // Parenthesized expression
-            if ("(".equals(current.value)) {
-                nextToken();
-                if (!Expression()) return false;
-                if (!consumeValue(")")) {
-                    localErrors.add(ErrorReporter.reportSyntaxError(line, "Expected ')' after parenthesized expression"));
-                    return false;
+        // Template literal with substitutions: head Expression (middle Expression)* tail
+        if (kind() == Lexer.TokenKind.TEMPLATE_HEAD) {
+            if (!enter(line)) return false;
+            nextToken();
+            boolean ok;
+            while (true) {
+                ok = Expression();
+                if (!ok) break;
+                if (kind() == Lexer.TokenKind.TEMPLATE_MIDDLE) {
+                    nextToken();
+                } else if (kind() == Lexer.TokenKind.TEMPLATE_TAIL) {
+                    nextToken();
+                    break;
+                } else {
+                    report(ErrorReporter.reportSyntaxError(line, "Expected '}' to close template substitution"));
+                    ok = false;
+                    break;
                 }
-                return true;
             }
+            depth--;
+            return ok;
         }
-        localErrors.add(ErrorReporter.reportSyntaxError(line, "Expected a valid value (identifier, number, string, or boolean)"));
+        report(ErrorReporter.reportSyntaxError(line, "Expected a valid value (identifier, number, string, or boolean)"));
+        // an object literal is not a value here, but its braces must not leak a '}' into the
+        // enclosing block
+        if (kind() == Lexer.TokenKind.LBRACE) skipBraces();
         return false;
     }
 
      // Declaration -> (var|let|const) Identifier ( = Expression ) ;
     private boolean Declaration() {
         int line = current != null ? current.line : -1;
-        String kw = current != null ? current.value : null;
-        if (!consumeValue(kw)) {
-            localErrors.add(ErrorReporter.reportSyntaxError(line, "Expected declaration keyword (var|let|const)"));
-            if (current != null) nextToken(); // skip a token
+        if (kind() != Lexer.TokenKind.KW_VAR && kind() != Lexer.TokenKind.KW_LET && kind() != Lexer.TokenKind.KW_CONST) {
+            report(ErrorReporter.reportSyntaxError(line, "Expected declaration keyword (var|let|const)"));
             return false;
         }
-        if (!consumeType(Lexer.TokenType.IDENTIFIER)) {
-            localErrors.add(ErrorReporter.reportIdentifierExpected(line, 0));
-            if (current != null) nextToken();
+        nextToken();
+        if (current == null || current.type != Lexer.TokenType.IDENTIFIER) {
+            report(ErrorReporter.reportIdentifierExpected(line, 0));
             return false;
         }
-        if (current != null && current.type == Lexer.TokenType.OPERATOR && "=".equals(current.value)) {
+        (depth == 0 ? declarations : localDeclarations).add(current);
+        nextToken();
+        if (kind() == Lexer.TokenKind.OP_ASSIGN) {
             nextToken();
             if (!Expression()) return false;
         }
-        if (!consumeValue(";")) {
-            localErrors.add(ErrorReporter.reportSemicolonExpected(line, 0));
-            if (current != null) nextToken();
+        if (kind() != Lexer.TokenKind.SEMI) {
+            report(ErrorReporter.reportSemicolonExpected(line, 0));
             return false;
         }
+        nextToken();
         return true;
     }
 
      // Assignment -> Identifier = Expression ;
     private boolean Assignment() {
         int line = current != null ? current.line : -1;
-        if (!consumeType(Lexer.TokenType.IDENTIFIER)) {
-            localErrors.add(ErrorReporter.reportIdentifierExpected(line, 0));
+        if (current == null || current.type != Lexer.TokenType.IDENTIFIER) {
+            report(ErrorReporter.reportIdentifierExpected(line, 0));
             return false;
         }
-        if (!consumeValue("=")) {
-            localErrors.add(ErrorReporter.reportUnexpectedToken(line, 0, "=", current != null ? current.value : "EOF"));
+        references.add(current);
+        nextToken();
+        if (kind() != Lexer.TokenKind.OP_ASSIGN) {
+            report(ErrorReporter.reportUnexpectedToken(line, 0, "=", current != null ? current.value : "EOF"));
             return false;
         }
+        nextToken();
         if (!Expression()) return false;
-        if (!consumeValue(";")) {
-            localErrors.add(ErrorReporter.reportSemicolonExpected(line, 0));
+        if (kind() != Lexer.TokenKind.SEMI) {
+            report(ErrorReporter.reportSemicolonExpected(line, 0));
             return false;
         }
+        nextToken();
         return true;
     }
 
     // OtherStatement -> skip until ; or } or EOF
     private boolean OtherStatement() {
-        // skip until ; or } or EOF
-        while (current != null && !(";".equals(current.value) || "}".equals(current.value) || current.type == Lexer.TokenType.ODF)) {
+        // a '}' closes the enclosing block, so only the ';' belongs to this statement; braces
+        // opened by the statement itself (function f() {...}, if (a) {...}) are skipped with it
+        // and the '}' closing them ends it
+        while (current != null && !isAtEnd()) {
+            Lexer.TokenKind k = kind();
+            if (k == Lexer.TokenKind.SEMI) {
+                nextToken();
+                break;
+            }
+            if (k == Lexer.TokenKind.RBRACE) break;
+            if (k == Lexer.TokenKind.LBRACE) {
+                skipBraces();
+                break;
+            }
             nextToken();
         }
-        if (current != null && (";".equals(current.value) || "}".equals(current.value))) nextToken();
         return true;
     }
-
-    // Helper to identify comparison operators
-    private boolean isComparisonOperator(String op) {
-        return "==".equals(op) || "!=".equals(op) || "<".equals(op) || 
-               ">".equals(op) || "<=".equals(op) || ">=".equals(op); 
-    }
 }
@@ -0,0 +1,296 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Project mode: validates a set of files as one program.
+// Every file is lexed and parsed on a worker thread and publishes its top-level declarations
+// into a sharded symbol index. Once all files are in, the identifiers each file uses but does
+// not declare itself are resolved against the declarations of the other files.
+// update(file) re-parses one file, rebuilds only that file's index entries and re-resolves
+// the files using a name it added or removed.
+// A name found nowhere is reported as a warning rather than an error: it may be a global of a
+// host this validator does not know, so a file single-file validation accepts still passes.
+public class ProjectValidator implements AutoCloseable {
+    private static final int SHARDS = 16;
+
+    // ECMAScript and common host (browser, Node.js) globals, never reported as unresolved.
+    // Names the lexer reads as keywords (undefined, console) never reach the resolver at all
+    private static final Set<String> GLOBALS = Set.of(
+            "NaN", "Infinity", "globalThis", "eval", "isNaN", "isFinite", "parseInt", "parseFloat",
+            "encodeURI", "encodeURIComponent", "decodeURI", "decodeURIComponent", "escape", "unescape",
+            "Object", "Function", "Array", "String", "Number", "Boolean", "Symbol", "BigInt", "Math", "JSON",
+            "Date", "RegExp", "Promise", "Proxy", "Reflect", "Intl", "Map", "Set", "WeakMap", "WeakSet",
+            "WeakRef", "FinalizationRegistry", "Error", "AggregateError", "EvalError", "RangeError",
+            "ReferenceError", "SyntaxError", "TypeError", "URIError", "ArrayBuffer", "SharedArrayBuffer",
+            "DataView", "Atomics", "Int8Array", "Uint8Array", "Uint8ClampedArray", "Int16Array", "Uint16Array",
+            "Int32Array", "Uint32Array", "Float32Array", "Float64Array", "BigInt64Array", "BigUint64Array",
+            "arguments", "window", "self", "document", "navigator", "location", "history", "localStorage",
+            "sessionStorage", "alert", "confirm", "prompt", "fetch", "setTimeout", "clearTimeout",
+            "setInterval", "clearInterval", "queueMicrotask", "structuredClone", "requestAnimationFrame",
+            "performance", "crypto", "URL", "URLSearchParams", "TextEncoder", "TextDecoder", "Blob", "Event",
+            "global", "process", "require", "module", "exports", "Buffer", "__dirname", "__filename"
+    );
+
+    // a top-level declaration of one file
+    public static final class Symbol {
+        public final String name;
+        public final Path file;
+        public final int line;
+
+        Symbol(String name, Path file, int line) {
+            this.name = name;
+            this.file = file;
+            this.line = line;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + file + ":" + line + ")";
+        }
+    }
+
+    // one compilation unit and what the parser collected from it
+    private static final class Unit {
+        final Path file;
+        final CompilationResult parsed;
+        final List<Symbol> declarations = new ArrayList<>();
+        final Set<String> declaredNames = new HashSet<>(); // top level and nested
+        final List<Lexer.Token> references;
+        final Set<String> referencedNames = new HashSet<>();
+        // written by the resolution pass
+        volatile List<String> warnings = Collections.emptyList();
+        volatile Map<String, Path> imports = Collections.emptyMap();
+
+        Unit(Path file, CompilationResult parsed, Parser parser) {
+            this.file = file;
+            this.parsed = parsed;
+            this.references = parser != null ? parser.getReferences() : Collections.emptyList();
+            if (parser == null) return;
+            for (Lexer.Token t : parser.getDeclarations()) {
+                declarations.add(new Symbol(t.value, file, t.line));
+                declaredNames.add(t.value);
+            }
+            for (Lexer.Token t : parser.getLocalDeclarations()) declaredNames.add(t.value);
+            for (Lexer.Token t : references) referencedNames.add(t.value);
+        }
+    }
+
+    private final ExecutorService workers;
+    private final Map<Path, Unit> units = new ConcurrentHashMap<>();
+    // name -> declarations, split by hash so threads publishing different names rarely meet
+    private final List<Map<String, List<Symbol>>> shards = new ArrayList<>(SHARDS);
+
+    public ProjectValidator(int threads) {
+        for (int i = 0; i < SHARDS; i++) shards.add(new HashMap<>());
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "project-worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // lexes and parses all files in parallel, then resolves their references; a path given
+    // twice is loaded once
+    public synchronized void validate(Collection<Path> files) throws InterruptedException {
+        List<Callable<Unit>> loads = new ArrayList<>();
+        for (Path file : new LinkedHashSet<>(files)) {
+            loads.add(() -> {
+                Unit u = load(file);
+                install(u);
+                return u;
+            });
+        }
+        List<Unit> loaded = await(workers.invokeAll(loads));
+
+        // every declaration is published, so the lookups below see the whole project
+        List<Callable<Unit>> resolves = new ArrayList<>();
+        for (Unit u : loaded) {
+            resolves.add(() -> {
+                resolve(u);
+                return u;
+            });
+        }
+        await(workers.invokeAll(resolves));
+    }
+
+    // re-validates one changed file; the other files keep their parse and index entries
+    public synchronized void update(Path file) {
+        Unit updated = load(file);
+        Unit old = install(updated);
+        Set<String> changed = changedNames(old, updated);
+        resolve(updated);
+        reresolveUsers(changed, updated);
+    }
+
+    // drops a deleted file from the project
+    public synchronized void remove(Path file) {
+        Unit old = units.remove(file);
+        if (old == null) return;
+        retract(old);
+        reresolveUsers(changedNames(old, null), null);
+    }
+
+    public List<Path> files() {
+        List<Path> files = new ArrayList<>(units.keySet());
+        Collections.sort(files);
+        return files;
+    }
+
+    // lexer and parser diagnostics of the file, null if unknown
+    public CompilationResult result(Path file) {
+        Unit u = units.get(file);
+        return u != null ? u.parsed : null;
+    }
+
+    // the file's unresolved references, as warnings
+    public List<String> warnings(Path file) {
+        Unit u = units.get(file);
+        return u != null ? u.warnings : Collections.emptyList();
+    }
+
+    // names the file uses from other files, with the file that declares each one
+    public Map<String, Path> imports(Path file) {
+        Unit u = units.get(file);
+        return u != null ? u.imports : Collections.emptyMap();
+    }
+
+    // top-level declarations of the given name across the project
+    public List<Symbol> lookup(String name) {
+        Map<String, List<Symbol>> shard = shard(name);
+        synchronized (shard) {
+            List<Symbol> found = shard.get(name);
+            return found != null ? new ArrayList<>(found) : Collections.emptyList();
+        }
+    }
+
+    public int symbolCount() {
+        int n = 0;
+        for (Map<String, List<Symbol>> shard : shards) {
+            synchronized (shard) {
+                for (List<Symbol> symbols : shard.values()) n += symbols.size();
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public void close() {
+        workers.shutdown();
+    }
+
+    private static Unit load(Path file) {
+        String code;
+        try {
+            code = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            List<String> errors = new ArrayList<>();
+            errors.add(ErrorReporter.reportSyntaxError(1, "Cannot read file (" + e.getMessage() + ")"));
+            return new Unit(file, new CompilationResult(new ArrayList<>(), errors, new ArrayList<>()), null);
+        }
+        List<String> lexicalErrors = new ArrayList<>();
+        List<String> syntaxErrors = new ArrayList<>();
+        Lexer lexer = new Lexer(code, lexicalErrors);
+        Parser parser = new Parser(lexer, syntaxErrors);
+        parser.Program();
+        return new Unit(file, new CompilationResult(lexer.getTokens(), lexicalErrors, syntaxErrors), parser);
+    }
+
+    // replaces the file's unit and its index entries, returning the previous unit
+    private Unit install(Unit u) {
+        Unit old = units.put(u.file, u);
+        if (old != null) retract(old);
+        for (Symbol s : u.declarations) {
+            Map<String, List<Symbol>> shard = shard(s.name);
+            synchronized (shard) {
+                shard.computeIfAbsent(s.name, k -> new ArrayList<>(1)).add(s);
+            }
+        }
+        return old;
+    }
+
+    private void retract(Unit u) {
+        for (Symbol s : u.declarations) {
+            Map<String, List<Symbol>> shard = shard(s.name);
+            synchronized (shard) {
+                List<Symbol> symbols = shard.get(s.name);
+                if (symbols == null) continue;
+                symbols.remove(s);
+                if (symbols.isEmpty()) shard.remove(s.name);
+            }
+        }
+    }
+
+    // a name used but not declared in the file must be a top-level declaration of another file
+    // or a known global; each unresolved name is reported once, at its first use
+    private void resolve(Unit u) {
+        List<String> warnings = new ArrayList<>();
+        Map<String, Path> imports = new TreeMap<>();
+        Set<String> reported = new HashSet<>();
+        for (Lexer.Token ref : u.references) {
+            String name = ref.value;
+            if (u.declaredNames.contains(name) || imports.containsKey(name) || GLOBALS.contains(name)) continue;
+            List<Symbol> found = lookup(name);
+            if (!found.isEmpty()) {
+                imports.put(name, found.get(0).file);
+            } else if (reported.add(name)) {
+                warnings.add(ErrorReporter.reportUnresolvedReference(ref.line, name));
+            }
+        }
+        u.warnings = warnings;
+        u.imports = imports;
+    }
+
+    private void reresolveUsers(Set<String> changed, Unit skip) {
+        if (changed.isEmpty()) return;
+        for (Unit u : units.values()) {
+            if (u != skip && !Collections.disjoint(u.referencedNames, changed)) resolve(u);
+        }
+    }
+
+    // top-level names declared by exactly one of the two versions of a file
+    private static Set<String> changedNames(Unit before, Unit after) {
+        Set<String> oldNames = new HashSet<>();
+        Set<String> newNames = new HashSet<>();
+        if (before != null) for (Symbol s : before.declarations) oldNames.add(s.name);
+        if (after != null) for (Symbol s : after.declarations) newNames.add(s.name);
+        Set<String> changed = new HashSet<>(oldNames);
+        changed.addAll(newNames);
+        oldNames.retainAll(newNames);
+        changed.removeAll(oldNames);
+        return changed;
+    }
+
+    private Map<String, List<Symbol>> shard(String name) {
+        int h = name.hashCode();
+        return shards.get((h ^ (h >>> 16)) & (SHARDS - 1));
+    }
+
+    private static List<Unit> await(List<Future<Unit>> futures) throws InterruptedException {
+        List<Unit> done = new ArrayList<>(futures.size());
+        for (Future<Unit> f : futures) {
+            try {
+                done.add(f.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Project validation failed", e.getCause());
+            }
+        }
+        return done;
+    }
+}
@@ -0,0 +1,537 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Frozen copy of the Lexer as it was before its scanning was optimized: every char goes through
+// the main loop, lexemes are built with StringBuilder and the old sentinel-string helpers are
+// kept. The differential fuzzer uses it as the reference the optimized Lexer must agree with.
+//
+// Lexing has also changed on purpose since then. Each intended change is a separate section
+// below, switched on by a Change, and written the plain way (char by char, java.util.regex for
+// numbers) rather than copied from Lexer. With every change on this is the specification of
+// today's Lexer; with none it is the old lexer exactly, including its endless loop on '`'.
+// Do not optimize this class.
+public class ReferenceLexer {
+    // behaviour changes made on purpose after the old lexer
+    public enum Change {
+        TEMPLATES, // template literals with ${...} substitutions
+        REGEX,     // regex literals, told from division by the previous token
+        NUMBERS    // hex, octal, binary, exponent, separator and BigInt numeric literals
+    }
+
+    public static final Set<Change> ALL = Collections.unmodifiableSet(EnumSet.allOf(Change.class));
+
+    private static final String[] Keywords = {"do", "while", "if", "else", "for", "switch", "case", "break", "continue", "var",
+            "let", "const","return", "true", "false", "null", "undefined", "try", "catch", "finally", "throw", "new",
+            "class", "extends", "super", "this", "import", "export", "from", "as", "in", "of", "instanceof", "console", "log",
+            "typeof", "void", "delete", "with", "static", "get", "set", "async", "default", "switch", "case",
+            "throw", "catch", "finally", "debugger", "enum", "implements", "interface", "package", "private", "protected", "public",
+            "static", "false", "true", "null", "undefined", "boolean", "number", "string", "symbol", "bigint", "yield"
+    };
+    private static final String[] PersonalKeyWords = {"Rezouali", "Imane"};
+    private static final String[] Operators = {
+            ">>>=", ">>=", "<<=", "**=", "!==", "===", "&&", "||", "??", "**",
+            "+=", "-=", "*=", "/=", "%=", "&=", "|=", "^=", ">>", "<<", "<=", ">=",
+            "==", "!=", "=>", "?", ":", ".", "+", "-", "*", "/", "%", "=", "&", "|",
+            "^", "~", "!", "?.", "++", "--", "<", ">"
+    };
+
+    // Change.NUMBERS: the JavaScript numeric literal grammar, one pattern per form
+    private static final String DIGITS = "[0-9](?:_?[0-9])*";
+    private static final String DECIMAL_INTEGER = "(?:0|[1-9](?:_?[0-9])*)";
+    private static final String FRACTION_EXPONENT = "(?:\\.(?:" + DIGITS + ")?)?(?:[eE][+-]?" + DIGITS + ")?";
+    private static final Pattern[] NUMBER_FORMS = {
+            Pattern.compile(DECIMAL_INTEGER + FRACTION_EXPONENT),
+            Pattern.compile(DECIMAL_INTEGER + "n"),
+            Pattern.compile("0[xX][0-9a-fA-F](?:_?[0-9a-fA-F])*n?"),
+            Pattern.compile("0[oO][0-7](?:_?[0-7])*n?"),
+            Pattern.compile("0[bB][01](?:_?[01])*n?"),
+            Pattern.compile("0[0-7]+"),                                         // legacy octal
+            Pattern.compile("0[0-7]*[89][0-9]*" + FRACTION_EXPONENT),           // non-octal decimal
+            Pattern.compile("\\." + DIGITS + "(?:[eE][+-]?" + DIGITS + ")?")      // leading dot (.5)
+    };
+
+    private final Set<Change> changes;
+    private final List<Lexer.Token> tokens = new ArrayList<>();
+    private final List<String> errors = new ArrayList<>();
+
+    public ReferenceLexer(String code, List<String> errors, Set<Change> changes) {
+        this.changes = changes;
+        tokenize(code);
+        if (errors != null) {
+            errors.addAll(this.errors);
+        }
+    }
+
+    public List<Lexer.Token> getTokens() {
+        return tokens;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    private boolean sameString(String a, String b) {
+        String a2 = a + '\0';
+        String b2 = b + '\0';
+        int i = 0;
+        while (true) {
+            char ca = a2.charAt(i);
+            char cb = b2.charAt(i);
+            if (ca == '\0' && cb == '\0') return true;
+            if (ca != cb) return false;
+            i++;
+        }
+    }
+
+    private boolean isKeyword(String s) {
+        for (String keyword : Keywords) {
+            if (sameString(s, keyword)) return true;
+        }
+        return false;
+    }
+
+    private boolean isPersonalKeyword(String s) {
+        for (String pk : PersonalKeyWords) {
+            if (sameString(s, pk)) return true;
+        }
+        return false;
+    }
+
+    private int indexCharForIdentifier(char c) {
+        if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || c == '_' || c == '$') {
+            return 0;
+        } else if (c >= '0' && c <= '9') {
+            return 1;
+        } else {
+            return 2;
+        }
+    }
+
+    private boolean isIdentifier(String s) {
+        int[][] MAT = {
+                {1, -1, -1},
+                {1, 1, -1}
+        };
+        int state = 0;
+        int i = 0;
+        s = s + '\0';
+        while (true) {
+            char c = s.charAt(i);
+            if (c == '\0') return state == 1;
+            int col = indexCharForIdentifier(c);
+            if (MAT[state][col] == -1) return false;
+            state = MAT[state][col];
+            i++;
+        }
+    }
+
+    private int indexCharForNumber(char c) {
+        if (c >= '0' && c <= '9') return 0;
+        else if (c == '.') return 1;
+        else return 2;
+    }
+
+    private boolean isNumber(String s) {
+        if (changes.contains(Change.NUMBERS)) {
+            for (Pattern form : NUMBER_FORMS) {
+                if (form.matcher(s).matches()) return true;
+            }
+            return false;
+        }
+        int[][] MAT = {
+                {1, -1, -1},
+                {1, 2, -1},
+                {2, -1, -1}
+        };
+        int state = 0;
+        int i = 0;
+        s = s + '\0';
+        while (true) {
+            char c = s.charAt(i);
+            if (c == '\0') return state == 1 || state == 2;
+            int col = indexCharForNumber(c);
+            if (MAT[state][col] == -1) return false;
+            state = MAT[state][col];
+            i++;
+        }
+    }
+
+    // Change.NUMBERS: end of the longest numeric literal at 'start', or 'start' if none
+    private int longestNumber(String code, int start) {
+        int end = start;
+        for (Pattern form : NUMBER_FORMS) {
+            Matcher m = form.matcher(code);
+            m.region(start, code.length());
+            if (m.lookingAt()) end = Math.max(end, m.end());
+        }
+        return end;
+    }
+
+    private boolean isDelimiter(char c) {
+        return c == ',' || c == ';' || c == '(' || c == ')' ||
+                c == '{' || c == '}' || c == '[' || c == ']' || c == '.';
+    }
+
+    // whether the identifier/number collector stops at index i
+    private boolean stopsLexeme(String code, int i, boolean numeric) {
+        char cc = code.charAt(i);
+        boolean isDotAllowedInNumber = numeric && (cc == '.');
+        boolean stop =
+                cc == '\0' ||
+                        Character.isWhitespace(cc) ||
+                        (isDelimiter(cc) && !isDotAllowedInNumber) ||
+                        cc == '"' || cc == '\'' || cc == '`' ||
+                        (cc == '/' && (code.charAt(i + 1) == '/' || code.charAt(i + 1) == '*'));
+        if (stop) return true;
+        for (String op : Operators) {
+            String opWithSentinel = op + '\0';
+            boolean opHere = false;
+            int k = 0;
+            while (true) {
+                char opChar = opWithSentinel.charAt(k);
+                char codeChar = code.charAt(i + k);
+                if (opChar == '\0') { opHere = true; break; }
+                if (opChar != codeChar) break;
+                k++;
+            }
+            if (numeric && sameString(op, ".")) {
+                opHere = false;
+            }
+            if (opHere) return true;
+        }
+        return false;
+    }
+
+    // Change.REGEX: a '/' starts a regex where an operand is expected
+    private boolean regexAllowed() {
+        if (tokens.isEmpty()) return true;
+        Lexer.Token prev = tokens.get(tokens.size() - 1);
+        if (prev.type == Lexer.TokenType.OPERATOR) {
+            return !sameString(prev.value, "++") && !sameString(prev.value, "--");
+        }
+        if (prev.type == Lexer.TokenType.DELIMITER) {
+            return !sameString(prev.value, ")") && !sameString(prev.value, "]");
+        }
+        if (prev.type == Lexer.TokenType.TEMPLATE) {
+            return prev.value.endsWith("${");
+        }
+        if (prev.type == Lexer.TokenType.KEYWORD) {
+            for (String k : new String[]{"return", "typeof", "instanceof", "in", "of", "new", "delete", "void",
+                    "throw", "case", "do", "else", "yield"}) {
+                if (sameString(prev.value, k)) return true;
+            }
+        }
+        return false;
+    }
+
+    private void tokenize(String code) {
+        code = code + '\0';
+        int i = 0;
+        int line = 1;
+        int column = 1;
+        List<String> ops = new ArrayList<>(Arrays.asList(Operators));
+        // Change.TEMPLATES: one entry per open "${": {braces open inside it, line, column of its template}
+        Deque<int[]> templates = new ArrayDeque<>();
+        do {
+
+            char c = code.charAt(i);
+            // maintain line and column count
+            if (c == '\n') {
+                line++;
+                column = 1;
+            } else {
+                column++;
+            }
+
+            // skip whitespace
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+
+            // comments
+            if (c == '/') {
+                char nxt = code.charAt(i + 1);
+
+                //single line
+                if (nxt == '/') {
+                    i += 2;
+                    do{
+                        char cc = code.charAt(i);
+                        if (cc == '\n' || cc == '\0') break;
+                        i++; // skip everything until newline
+                    }while (true);
+                    continue;
+                }
+
+                // multi-line comment
+                else if (nxt == '*') {
+                    int start = i;
+                    int j = i + 2;
+                    int tempLine = line;
+                    boolean closed = false;
+
+                    while (true) {
+                        char cc = code.charAt(j);
+                        if (cc == '\0') break;
+                        if (cc == '\n') tempLine++;
+                        if (cc == '*' && code.charAt(j + 1) == '/') {
+                            i = j + 2;
+                            line = tempLine;
+                            closed = true;
+                            break;
+                        }
+                        j++;
+                    }
+
+                    if (!closed) {
+                        int commentStartIndex = start;
+                        int lastNl = code.lastIndexOf('\n', commentStartIndex - 1);
+                        int commentStartColumn = (lastNl == -1) ? (commentStartIndex + 1) : (commentStartIndex - lastNl);
+
+                        errors.add(ErrorReporter.reportUnterminatedComment(line, commentStartColumn));
+                        i = start + 2;
+                        int lastNewlineBeforeI = code.lastIndexOf('\n', i - 1);
+                        if (lastNewlineBeforeI == -1) {
+                            column = i + 1;
+                        } else {
+                            column = i - lastNewlineBeforeI;
+                        }
+                    }
+                    continue;
+                }
+
+                // Change.REGEX: body up to an unescaped '/' outside a class, then the flags;
+                // unterminated at the end of the line, where lexing resumes
+                else if (changes.contains(Change.REGEX) && regexAllowed()) {
+                    int j = i + 1;
+                    boolean inClass = false;
+                    boolean closed = false;
+                    while (true) {
+                        char ch = code.charAt(j);
+                        if (ch == '\0' || ch == '\n' || ch == '\r') break;
+                        j++;
+                        if (ch == '\\') {
+                            char next = code.charAt(j);
+                            if (next == '\0' || next == '\n' || next == '\r') break;
+                            j++;
+                        } else if (ch == '[') {
+                            inClass = true;
+                        } else if (ch == ']') {
+                            inClass = false;
+                        } else if (ch == '/' && !inClass) {
+                            closed = true;
+                            break;
+                        }
+                    }
+                    if (closed) {
+                        while (indexCharForIdentifier(code.charAt(j)) != 2) j++;
+                        tokens.add(new Lexer.Token(Lexer.TokenType.REGEX, code.substring(i, j), line, i));
+                        i = j;
+                    } else {
+                        errors.add(ErrorReporter.reportUnterminatedRegex(line, column));
+                        while (code.charAt(i) != '\0' && code.charAt(i) != '\n' && code.charAt(i) != '\r') i++;
+                    }
+                    continue;
+                }
+            }
+
+            // Change.TEMPLATES: a '`' starts a template, a '}' closing a "${" continues it; each
+            // chunk runs to the closing '`' or the next "${"
+            boolean closesSubstitution = changes.contains(Change.TEMPLATES) && c == '}'
+                    && !templates.isEmpty() && templates.peek()[0] == 0;
+            if (changes.contains(Change.TEMPLATES) && (c == '`' || closesSubstitution)) {
+                int chunkStart = i;
+                int chunkLine = line;
+                int[] enclosing = closesSubstitution ? templates.pop() : null;
+                int j = i + 1;
+                boolean closed = false;
+                boolean opensSubstitution = false;
+                while (true) {
+                    char ch = code.charAt(j);
+                    if (ch == '\0') break;
+                    j++;
+                    if (ch == '`') { closed = true; break; }
+                    if (ch == '$' && code.charAt(j) == '{') { j++; closed = true; opensSubstitution = true; break; }
+                    if (ch == '\\' && code.charAt(j) != '\0') j++;
+                }
+                if (!closed) {
+                    if (enclosing == null) {
+                        errors.add(ErrorReporter.reportUnterminatedTemplate(line, column));
+                    } else {
+                        errors.add(ErrorReporter.reportUnterminatedTemplate(enclosing[1], enclosing[2]));
+                    }
+                    templates.clear();
+                } else {
+                    tokens.add(new Lexer.Token(Lexer.TokenType.TEMPLATE, code.substring(chunkStart, j), chunkLine, chunkStart));
+                    if (opensSubstitution) {
+                        templates.push(enclosing == null ? new int[]{0, line, column} : new int[]{0, enclosing[1], enclosing[2]});
+                    }
+                }
+                int lastNl = -1;
+                for (int k = chunkStart; k < j; k++) {
+                    if (code.charAt(k) == '\n') {
+                        line++;
+                        lastNl = k;
+                    }
+                }
+                if (lastNl >= 0) column = j - lastNl;
+                i = j;
+                continue;
+            }
+
+            // Change.NUMBERS: a '.' followed by a digit starts a number (.5), not a delimiter
+            if (changes.contains(Change.NUMBERS) && c == '.') {
+                int numberEnd = longestNumber(code, i);
+                if (numberEnd > i && stopsLexeme(code, numberEnd, true)) {
+                    tokens.add(new Lexer.Token(Lexer.TokenType.NUMBER, code.substring(i, numberEnd), line, i));
+                    column += numberEnd - i;
+                    i = numberEnd;
+                    continue;
+                }
+            }
+
+            //delimiters
+            if (isDelimiter(c)) {
+                if (changes.contains(Change.TEMPLATES) && !templates.isEmpty()) {
+                    if (c == '{') templates.peek()[0]++;
+                    if (c == '}') templates.peek()[0]--;
+                }
+                tokens.add(new Lexer.Token(Lexer.TokenType.DELIMITER, "" + c, line, i));
+                i++;
+                continue;
+            }
+            int bestMatchLen = 0;
+            String bestMatchOp = null;
+
+            for (String op : ops) {
+                String opWithSentinel = op + '\0';
+                int k = 0;
+                while (true) {
+                    char opChar = opWithSentinel.charAt(k);
+                    char codeChar = code.charAt(i + k);
+                    if (opChar == '\0') {
+                        if (k > bestMatchLen) {
+                            bestMatchLen = k;
+                            bestMatchOp = op;
+                        }
+                        break;
+                    }
+                    if (opChar != codeChar) break;
+                    k++;
+                }
+            }
+
+            if (bestMatchLen > 0) {
+                tokens.add(new Lexer.Token(Lexer.TokenType.OPERATOR, bestMatchOp, line, i));
+                i += bestMatchLen;
+                continue;
+            }
+
+            //strings
+            if (c == '"' || c == '\'') {
+                char quote = c;
+                int strStart = i;
+                StringBuilder sb = new StringBuilder();
+                sb.append(quote);
+                i++;
+                int strLine = line;
+
+                boolean closed = false;
+                while (true) {
+                    char ch = code.charAt(i);
+                    if (ch == '\0' || ch == '\n') break;
+                    sb.append(ch);
+                    i++;
+                    if (ch == quote) { closed = true; break; }
+                    if (ch == '\\') {
+                        char esc = code.charAt(i);
+                        if (esc != '\0') { sb.append(esc); i++; }
+                    }
+                }
+
+                if (closed) {
+                    tokens.add(new Lexer.Token(Lexer.TokenType.STRING, sb.toString(), strLine, strStart));
+                } else {
+                    errors.add(ErrorReporter.reportUnterminatedString(strLine, column, sb.toString()));
+                    if (code.charAt(i) == '\n') { line++; i++; }
+                    else if (code.charAt(i) == '\0') { }
+                }
+                continue;
+            }
+            // identifiers, numbers, and invalid tokens
+            StringBuilder tokenBuilder = new StringBuilder();
+            int tokenStartLine = line;
+            int tokenStartColumn = column;
+            int tokenStartOffset = i;
+            boolean hasChar = false;
+            char tokenFirstChar = code.charAt(i);
+            boolean numeric = tokenFirstChar >= '0' && tokenFirstChar <= '9';
+
+            // Change.NUMBERS: the longest numeric literal is a token when the lexeme ends there
+            if (changes.contains(Change.NUMBERS) && numeric) {
+                int numberEnd = longestNumber(code, i);
+                if (numberEnd > i && stopsLexeme(code, numberEnd, true)) {
+                    tokens.add(new Lexer.Token(Lexer.TokenType.NUMBER, code.substring(i, numberEnd), line, i));
+                    column += numberEnd - i;
+                    i = numberEnd;
+                    continue;
+                }
+            }
+
+            do {
+                if (stopsLexeme(code, i, numeric)) break;
+
+                tokenBuilder.append(code.charAt(i));
+                i++;
+                column++;
+                hasChar = true;
+            } while (true);
+
+            if (hasChar) {
+                String tokenStr = tokenBuilder.toString();
+
+                char first = tokenStr.charAt(0);
+                if (first >= '0' && first <= '9') {
+                    if (isNumber(tokenStr)) {
+                        tokens.add(new Lexer.Token(Lexer.TokenType.NUMBER, tokenStr, tokenStartLine, tokenStartOffset));
+                    } else {
+                        errors.add(ErrorReporter.reportInvalidToken(tokenStartLine, tokenStartColumn, tokenStr));
+                    }
+                } else if ((first >= 'A' && first <= 'Z') || (first >= 'a' && first <= 'z') || first == '_' || first == '$') {
+                    if (isKeyword(tokenStr)) tokens.add(new Lexer.Token(Lexer.TokenType.KEYWORD, tokenStr, tokenStartLine, tokenStartOffset));
+                    else if (isPersonalKeyword(tokenStr)) tokens.add(new Lexer.Token(Lexer.TokenType.PERSONAL_KEYWORD, tokenStr, tokenStartLine, tokenStartOffset));
+                    else if (isIdentifier(tokenStr)) tokens.add(new Lexer.Token(Lexer.TokenType.IDENTIFIER, tokenStr, tokenStartLine, tokenStartOffset));
+                    else {
+                        errors.add(ErrorReporter.reportInvalidToken(tokenStartLine, tokenStartColumn, tokenStr));
+                    }
+                } else {
+                    if (tokenStr.length() == 1) {
+                        char bad = tokenStr.charAt(0);
+                        errors.add(ErrorReporter.reportUnexpectedChar(tokenStartLine, tokenStartColumn, bad));
+                    } else {
+                        errors.add(ErrorReporter.reportInvalidToken(tokenStartLine, tokenStartColumn, tokenStr));
+                    }
+                }
+            }
+
+
+        } while (code.charAt(i) != '\0');
+
+        // Change.TEMPLATES: a "${" still open at the end leaves its outermost template unterminated
+        if (!templates.isEmpty()) {
+            int[] outermost = templates.peekLast();
+            errors.add(ErrorReporter.reportUnterminatedTemplate(outermost[1], outermost[2]));
+        }
+
+        tokens.add(new Lexer.Token(Lexer.TokenType.ODF, "\0", line, i));
+    }
+}
@@ -0,0 +1,243 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compact binary format for a token stream and its diagnostics.
+//
+// layout (all integers are unsigned LEB128 varints unless noted):
+//   magic (4 bytes) version (1 byte)
+//   string table: count, then for each entry its UTF-8 length << 1 and bytes, or, for strings
+//       with unpaired surrogates that UTF-8 cannot carry, (char count << 1) | 1 and the raw
+//       big-endian UTF-16 chars
+//   tokens: count, then for each token
+//       type (1 byte, TokenType ordinal)
+//       value (string table index)
+//       line delta from the previous token (zigzag)
+//       offset delta from the end of the previous token (zigzag)
+//   lexical errors: count, string table indexes
+//   syntax errors: count, string table indexes
+//
+// Identifiers, keywords and diagnostics repeat a lot, so every distinct string is stored once.
+// Reading works directly on the ByteBuffer, which may be a memory-mapped file.
+public class TokenCodec {
+    private static final int MAGIC = 0x4D4A5354; // "MJST"
+    private static final byte VERSION = 3; // 2: template and regex tokens, 3: raw UTF-16 strings
+
+    public static ByteBuffer encode(CompilationResult result) {
+        return encode(result.tokens, result.lexicalErrors, result.syntaxErrors);
+    }
+
+    public static ByteBuffer encode(List<Lexer.Token> tokens, List<String> lexicalErrors, List<String> syntaxErrors) {
+        // build the string table first so each token only stores an index
+        Map<String, Integer> index = new HashMap<>();
+        List<String> table = new ArrayList<>();
+        for (Lexer.Token t : tokens) intern(t.value, index, table);
+        for (String e : lexicalErrors) intern(e, index, table);
+        for (String e : syntaxErrors) intern(e, index, table);
+
+        Writer out = new Writer(16 + tokens.size() * 4);
+        out.putInt(MAGIC);
+        out.put(VERSION);
+
+        out.putVarint(table.size());
+        for (String s : table) {
+            if (isWellFormed(s)) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                out.putVarint(bytes.length << 1);
+                out.put(bytes);
+            } else {
+                out.putVarint(s.length() << 1 | 1);
+                for (int i = 0; i < s.length(); i++) out.putChar(s.charAt(i));
+            }
+        }
+
+        out.putVarint(tokens.size());
+        int prevLine = 0;
+        int prevEnd = 0;
+        for (Lexer.Token t : tokens) {
+            out.put((byte) t.type.ordinal());
+            out.putVarint(index.get(t.value));
+            out.putVarint(zigzag(t.line - prevLine));
+            out.putVarint(zigzag(t.offset - prevEnd));
+            prevLine = t.line;
+            prevEnd = t.offset < 0 ? prevEnd : t.offset + t.value.length();
+        }
+
+        out.putVarint(lexicalErrors.size());
+        for (String e : lexicalErrors) out.putVarint(index.get(e));
+        out.putVarint(syntaxErrors.size());
+        for (String e : syntaxErrors) out.putVarint(index.get(e));
+
+        return out.finish();
+    }
+
+    // decodes from the buffer's current position; throws IllegalArgumentException on malformed input
+    public static CompilationResult decode(ByteBuffer in) {
+        try {
+            if (in.getInt() != MAGIC) throw new IllegalArgumentException("Not a token stream");
+            if (in.get() != VERSION) throw new IllegalArgumentException("Unsupported token stream version");
+
+            String[] table = new String[getCount(in)];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = getString(in);
+            }
+
+            Lexer.TokenType[] types = Lexer.TokenType.values();
+            int count = getCount(in);
+            List<Lexer.Token> tokens = new ArrayList<>(count);
+            int line = 0;
+            int prevEnd = 0;
+            for (int i = 0; i < count; i++) {
+                int type = in.get() & 0xFF;
+                if (type >= types.length) throw new IllegalArgumentException("Unknown token type " + type);
+                String value = table[getIndex(in, table)];
+                line += unzigzag(getVarint(in));
+                int offset = prevEnd + unzigzag(getVarint(in));
+                tokens.add(new Lexer.Token(types[type], value, line, offset));
+                if (offset >= 0) prevEnd = offset + value.length();
+            }
+
+            List<String> lexicalErrors = new ArrayList<>();
+            for (int i = getCount(in); i > 0; i--) lexicalErrors.add(table[getIndex(in, table)]);
+            List<String> syntaxErrors = new ArrayList<>();
+            for (int i = getCount(in); i > 0; i--) syntaxErrors.add(table[getIndex(in, table)]);
+
+            return new CompilationResult(tokens, lexicalErrors, syntaxErrors);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated token stream", e);
+        }
+    }
+
+    private static void intern(String s, Map<String, Integer> index, List<String> table) {
+        if (!index.containsKey(s)) {
+            index.put(s, table.size());
+            table.add(s);
+        }
+    }
+
+    private static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    private static int unzigzag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static int getVarint(ByteBuffer in) {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            result |= (b & 0x7F) << shift;
+            if (b >= 0) return result;
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    // a count or length can never exceed the bytes left in the buffer
+    private static int getCount(ByteBuffer in) {
+        int count = getVarint(in);
+        if (count < 0 || count > in.remaining()) throw new IllegalArgumentException("Corrupt length " + count);
+        return count;
+    }
+
+    private static int getIndex(ByteBuffer in, String[] table) {
+        int i = getVarint(in);
+        if (i < 0 || i >= table.length) throw new IllegalArgumentException("String index out of range " + i);
+        return i;
+    }
+
+    private static String getString(ByteBuffer in) {
+        int header = getVarint(in);
+        int length = header >>> 1;
+        if ((header & 1) == 0) {
+            if (length > in.remaining()) throw new IllegalArgumentException("Corrupt length " + length);
+            return getUtf8(in, length);
+        }
+        if (length > in.remaining() / 2) throw new IllegalArgumentException("Corrupt length " + length);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) chars[i] = in.getChar();
+        return new String(chars);
+    }
+
+    // false if the string has an unpaired surrogate, which UTF-8 would turn into '?'
+    private static boolean isWellFormed(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String getUtf8(ByteBuffer in, int length) {
+        String s;
+        if (in.hasArray()) {
+            s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return s;
+    }
+
+    // growable heap buffer used while encoding
+    private static final class Writer {
+        private ByteBuffer buf;
+
+        Writer(int capacity) {
+            buf = ByteBuffer.allocate(Math.max(capacity, 64));
+        }
+
+        private void ensure(int n) {
+            if (buf.remaining() < n) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + n));
+                buf.flip();
+                bigger.put(buf);
+                buf = bigger;
+            }
+        }
+
+        void put(byte b) {
+            ensure(1);
+            buf.put(b);
+        }
+
+        void put(byte[] bytes) {
+            ensure(bytes.length);
+            buf.put(bytes);
+        }
+
+        void putChar(char c) {
+            ensure(2);
+            buf.putChar(c);
+        }
+
+        void putInt(int v) {
+            ensure(4);
+            buf.putInt(v);
+        }
+
+        void putVarint(int v) {
+            ensure(5);
+            while ((v & ~0x7F) != 0) {
+                buf.put((byte) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            buf.put((byte) v);
+        }
+
+        ByteBuffer finish() {
+            buf.flip();
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+// Facade for embedding the compiler in a multi-tenant service.
+// Each request runs on its own virtual thread (Java 21+; on older JVMs a pool with one platform
+// thread per core is used instead) and is bounded by per-request limits on input size, token
+// count, nesting depth and time, so one hostile snippet cannot starve the others. The token
+// limit and the deadline are enforced inside the lexer, which stops as soon as either is hit,
+// and cancelling the future returned by validate stops the lexer the same way.
+public class ValidationService implements AutoCloseable {
+    public static final int DEFAULT_MAX_INPUT_CHARS = 1 << 20;
+    public static final int DEFAULT_MAX_TOKENS = 200_000;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+
+    private final int maxInputChars;
+    private final int maxTokens;
+    private final int maxDepth;
+    private final long timeoutMillis;
+    private final ExecutorService executor;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public ValidationService() {
+        this(DEFAULT_MAX_INPUT_CHARS, DEFAULT_MAX_TOKENS, Parser.DEFAULT_MAX_DEPTH);
+    }
+
+    public ValidationService(int maxInputChars, int maxTokens, int maxDepth) {
+        this(maxInputChars, maxTokens, maxDepth, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public ValidationService(int maxInputChars, int maxTokens, int maxDepth, long timeoutMillis) {
+        this.maxInputChars = maxInputChars;
+        this.maxTokens = maxTokens;
+        this.maxDepth = maxDepth;
+        this.timeoutMillis = timeoutMillis;
+        this.executor = newExecutor();
+    }
+
+    // virtual-thread-per-task executor when the runtime has one, looked up reflectively so the
+    // sources still build on the JDKs the README supports
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+                Thread t = new Thread(r, "validation-worker");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    // cancelling the returned future abandons the request: its lexer stops at the next check
+    public CompletableFuture<CompilationResult> validate(String code) {
+        CompletableFuture<CompilationResult> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                result.complete(validateNow(code, result::isDone));
+            } catch (RuntimeException | Error e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    // runs one request on the calling thread, applying the limits
+    public CompilationResult validateNow(String code) {
+        return validateNow(code, () -> false);
+    }
+
+    private CompilationResult validateNow(String code, BooleanSupplier cancelled) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        BooleanSupplier stop = () -> cancelled.getAsBoolean() || System.nanoTime() - deadline > 0;
+        List<String> lexicalErrors = new ArrayList<>();
+        List<String> syntaxErrors = new ArrayList<>();
+        if (code.length() > maxInputChars) {
+            rejected.incrementAndGet();
+            lexicalErrors.add(ErrorReporter.reportSyntaxError(1,
+                    "Input too large (" + code.length() + " chars, limit " + maxInputChars + ")"));
+            return new CompilationResult(new ArrayList<>(), lexicalErrors, syntaxErrors);
+        }
+
+        Lexer lexer = new Lexer(code, lexicalErrors, LexemeInterner.SHARED, maxTokens, stop);
+        List<Lexer.Token> tokens = lexer.getTokens();
+        if (lexer.isTruncated()) {
+            rejected.incrementAndGet();
+            lexicalErrors.add(ErrorReporter.reportSyntaxError(tokens.get(maxTokens).line,
+                    "Too many tokens (more than " + maxTokens + ")"));
+            return new CompilationResult(new ArrayList<>(), lexicalErrors, syntaxErrors);
+        }
+        if (lexer.isCancelled()) {
+            rejected.incrementAndGet();
+            lexicalErrors.add(ErrorReporter.reportSyntaxError(tokens.get(tokens.size() - 1).line,
+                    cancelled.getAsBoolean() ? "Validation cancelled" : "Validation timed out (limit " + timeoutMillis + " ms)"));
+            return new CompilationResult(new ArrayList<>(), lexicalErrors, syntaxErrors);
+        }
+
+        Parser parser = new Parser(tokens, syntaxErrors);
+        parser.setMaxDepth(maxDepth);
+        parser.Program();
+        completed.incrementAndGet();
+        return new CompilationResult(tokens, lexicalErrors, syntaxErrors);
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}